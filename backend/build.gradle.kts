@@ -3,6 +3,7 @@ plugins {
 	application
 	id("org.springframework.boot") version "3.5.8"
 	id("io.spring.dependency-management") version "1.1.7"
+	id("me.champeau.jmh") version "0.7.3"
 }
 
 application {
@@ -11,6 +12,13 @@ application {
 
 group = "com.hethond"
 
+// Load generator (src/loadtest) runs as a separate client against a running server
+sourceSets {
+	create("loadtest")
+}
+
+val loadtestServer: Configuration by configurations.creating
+
 java {
 	sourceCompatibility = JavaVersion.VERSION_21
 }
@@ -24,8 +32,11 @@ dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-security")
 	implementation("org.springframework.boot:spring-boot-starter-web")
 	implementation("org.springframework.boot:spring-boot-starter-websocket")
+	implementation("org.springframework.boot:spring-boot-starter-actuator")
+	runtimeOnly("io.micrometer:micrometer-registry-prometheus")
 
 	implementation("org.springframework.boot:spring-boot-starter-data-redis")
+	implementation("com.github.ben-manes.caffeine:caffeine")
 
 
 	implementation("com.vonage:server-sdk:8.6.0")
@@ -38,6 +49,42 @@ dependencies {
 	runtimeOnly("com.mysql:mysql-connector-j")
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
 	testImplementation("org.springframework.security:spring-security-test")
+	testRuntimeOnly("com.h2database:h2")
+
+	loadtestServer("com.h2database:h2")
+	"loadtestImplementation"("org.springframework.boot:spring-boot-starter-websocket")
+	"loadtestImplementation"("io.lettuce:lettuce-core")
+	"loadtestImplementation"("org.hdrhistogram:HdrHistogram:2.2.2")
+}
+
+// ./gradlew bootRun -PvirtualThreads runs requests and STOMP channels on virtual threads and reports pinning
+// To compare with platform threads, run the same load against each mode, e.g. with -Ploadtest:
+// ./gradlew loadtest --args="--users=1000 --channels=10 --rate=20 --warmup=10 --duration=30 --setupConcurrency=8"
+tasks.named<org.springframework.boot.gradle.tasks.run.BootRun>("bootRun") {
+	if (project.hasProperty("virtualThreads")) {
+		systemProperty("spring.threads.virtual.enabled", "true")
+		jvmArgs("-Djdk.tracePinnedThreads=short")
+	}
+	// ./gradlew bootRun -Ploadtest runs on H2 with the stub SMS sender (see application-loadtest.properties)
+	if (project.hasProperty("loadtest")) {
+		classpath(loadtestServer)
+		systemProperty("spring.profiles.active", "loadtest")
+	}
+}
+
+// ./gradlew loadtest --args="--users=500 --rate=200" drives a running server; see LoadTestOptions for all options
+tasks.register<JavaExec>("loadtest") {
+	group = "verification"
+	description = "Measures post-to-delivery latency over STOMP against a running server."
+	classpath = sourceSets["loadtest"].runtimeClasspath
+	mainClass.set("com.hethond.chatbackend.loadtest.LoadGenerator")
+}
+
+// ./gradlew jmh runs the benchmarks in src/jmh; results are written as JSON for comparison between releases
+jmh {
+	resultFormat.set("JSON")
+	resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+	jmhVersion.set("1.37")
 }
 
 tasks.withType<Test> {
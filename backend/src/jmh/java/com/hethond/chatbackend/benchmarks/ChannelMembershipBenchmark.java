@@ -0,0 +1,66 @@
+package com.hethond.chatbackend.benchmarks;
+
+import com.hethond.chatbackend.entities.AccountStatus;
+import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.Role;
+import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.services.ChannelMembershipIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Membership checks on large channels: the entity's linear scan against the membership index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelMembershipBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int memberCount;
+
+    private Channel channel;
+    private ChannelMembershipIndex.MemberIdSet memberIds;
+    private UUID lastMember;
+    private UUID nonMember;
+
+    @Setup
+    public void setup() {
+        channel = new Channel("large");
+        List<UUID> ids = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            channel.addMember(new User(id, null, "user" + i, "hash", Role.USER, AccountStatus.ACTIVE));
+        }
+        memberIds = ChannelMembershipIndex.MemberIdSet.of(ids);
+        lastMember = ids.getLast();
+        nonMember = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public boolean entityHasMember() {
+        return channel.hasMemberWithId(lastMember);
+    }
+
+    @Benchmark
+    public boolean entityHasNonMember() {
+        return channel.hasMemberWithId(nonMember);
+    }
+
+    @Benchmark
+    public boolean indexHasMember() {
+        return memberIds.contains(lastMember);
+    }
+
+    @Benchmark
+    public boolean indexHasNonMember() {
+        return memberIds.contains(nonMember);
+    }
+}
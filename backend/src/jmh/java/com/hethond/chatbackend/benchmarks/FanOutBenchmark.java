@@ -0,0 +1,88 @@
+package com.hethond.chatbackend.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hethond.chatbackend.entities.AccountStatus;
+import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.Role;
+import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.entities.dto.EncodedMessageDto;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-member fan-out loop up to the broker channel: converting the DTO for every member
+ * against sending one pre-encoded frame to every member.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+    @Param({"10", "100", "2000"})
+    public int memberCount;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Channel channel;
+    private MessageBasicDto messageDto;
+    private SimpMessagingTemplate messagingTemplate;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+
+        channel = new Channel("large");
+        channel.setId(1L);
+        User author = null;
+        for (int i = 0; i < memberCount; i++) {
+            User member = new User(UUID.randomUUID(), null, "user" + i, "hash", Role.USER, AccountStatus.ACTIVE);
+            channel.addMember(member);
+            author = member;
+        }
+        Message message = new Message(author, channel, "The quick brown fox jumps over the lazy dog.");
+        message.setId(1L);
+        messageDto = MessageBasicDto.fromMessage(message);
+
+        MessageChannel brokerChannel = (sentMessage, timeout) -> {
+            this.blackhole.consume(sentMessage);
+            return true;
+        };
+        messagingTemplate = new SimpMessagingTemplate(brokerChannel);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        messagingTemplate.setMessageConverter(converter);
+    }
+
+    @Benchmark
+    public void convertPerMember() {
+        for (User recipient : channel.getMembers()) {
+            messagingTemplate.convertAndSendToUser(recipient.getId().toString(), "/topic/messages", messageDto);
+        }
+    }
+
+    @Benchmark
+    public void encodeOnce() {
+        EncodedMessageDto encoded = EncodedMessageDto.fromMessageDto(messageDto, objectMapper);
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        org.springframework.messaging.Message<byte[]> frame =
+                MessageBuilder.createMessage(encoded.getPayloadBytes(), accessor.getMessageHeaders());
+        for (User recipient : channel.getMembers()) {
+            messagingTemplate.send("/user/" + recipient.getId() + "/topic/messages", frame);
+        }
+    }
+}
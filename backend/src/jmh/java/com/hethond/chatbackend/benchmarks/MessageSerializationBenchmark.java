@@ -0,0 +1,52 @@
+package com.hethond.chatbackend.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hethond.chatbackend.entities.AccountStatus;
+import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.Role;
+import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.response.ApiResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a saved message into its DTO and of serializing the REST response around it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Message message;
+    private MessageBasicDto messageDto;
+
+    @Setup
+    public void setup() {
+        User author = new User(UUID.randomUUID(), "+31600000000", "benchmark_user", "hash", Role.USER, AccountStatus.ACTIVE);
+        Channel channel = new Channel("general");
+        channel.setId(1L);
+        channel.addMember(author);
+
+        message = new Message(author, channel, "The quick brown fox jumps over the lazy dog.");
+        message.setId(1L);
+        messageDto = MessageBasicDto.fromMessage(message);
+    }
+
+    @Benchmark
+    public MessageBasicDto fromMessage() {
+        return MessageBasicDto.fromMessage(message);
+    }
+
+    @Benchmark
+    public byte[] serializeApiResponse() throws Exception {
+        return objectMapper.writeValueAsBytes(ApiResponse.success(messageDto));
+    }
+}
@@ -0,0 +1,89 @@
+package com.hethond.chatbackend.benchmarks;
+
+import com.hethond.chatbackend.services.SessionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session token generation and lookup, with Redis replaced by an in-memory map. A near-cache TTL
+ * of 0 makes every lookup go to the store; 60 serves repeated lookups from the near-cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionServiceBenchmark {
+    @Param({"0", "60"})
+    public long nearCacheTtlSeconds;
+
+    private SessionService sessionService;
+    private UUID userId;
+    private String token;
+
+    @Setup
+    public void setup() {
+        sessionService = new SessionService(new InMemoryRedisTemplate(), new RedisMessageListenerContainer(),
+                new SimpleMeterRegistry(), 100_000, nearCacheTtlSeconds);
+        userId = UUID.randomUUID();
+        token = sessionService.createSession(userId);
+    }
+
+    @Benchmark
+    public String createSession() {
+        return sessionService.createSession(userId);
+    }
+
+    @Benchmark
+    public UUID getUserIdBySession() {
+        return sessionService.getUserIdBySession(token);
+    }
+
+    /**
+     * Answers the value operations SessionService uses from a map; pub/sub and deletes are no-ops.
+     */
+    private static final class InMemoryRedisTemplate extends StringRedisTemplate {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final ValueOperations<String, String> valueOperations = createValueOperations();
+
+        @Override
+        public ValueOperations<String, String> opsForValue() {
+            return valueOperations;
+        }
+
+        @Override
+        public Boolean delete(String key) {
+            return values.remove(key) != null;
+        }
+
+        @Override
+        public Long convertAndSend(String channel, Object message) {
+            return 0L;
+        }
+
+        @SuppressWarnings("unchecked")
+        private ValueOperations<String, String> createValueOperations() {
+            return (ValueOperations<String, String>) Proxy.newProxyInstance(
+                    ValueOperations.class.getClassLoader(),
+                    new Class<?>[]{ValueOperations.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "set" -> {
+                            values.put((String) args[0], (String) args[1]);
+                            yield null;
+                        }
+                        case "get" -> values.get((String) args[0]);
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.hethond.chatbackend.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The REST calls a synthetic user makes. Verification codes are read straight from Redis,
+ * where {@code VerificationService} stores them before the (stubbed) SMS is sent.
+ */
+public class ChatApiClient implements AutoCloseable {
+    public record Session(UUID userId, String username, String token) {}
+
+    private final URI baseUrl;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<String, String> redisConnection;
+
+    public ChatApiClient(final URI baseUrl, final String redisUri) {
+        this.baseUrl = baseUrl;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.redisClient = RedisClient.create(redisUri);
+        this.redisConnection = redisClient.connect();
+    }
+
+    /** Registers, verifies and logs in a new user. */
+    public Session signUp(final String username, final String phone, final String password) throws IOException, InterruptedException {
+        final JsonNode user = send(post("/auth/register", null,
+                Map.of("phone", phone, "username", username, "password", password)));
+
+        final String code = redisConnection.sync().get("verification:" + phone);
+        if (code == null)
+            throw new IllegalStateException("No verification code in Redis for " + phone);
+        send(post("/auth/verify", null, Map.of("phone", phone, "code", code)));
+
+        final JsonNode token = send(post("/auth/login", null, Map.of("username", username, "password", password)));
+        return new Session(UUID.fromString(user.get("id").asText()), username, token.asText());
+    }
+
+    public void addMember(final Session session, final long channelId, final UUID userId) throws IOException, InterruptedException {
+        send(post("/channels/" + channelId + "/members", session.token(), Map.of("userId", userId.toString())));
+    }
+
+    public CompletableFuture<HttpResponse<Void>> postMessageAsync(final Session session, final long channelId, final String content) {
+        return httpClient.sendAsync(post("/channels/" + channelId + "/messages", session.token(), Map.of("content", content)),
+                HttpResponse.BodyHandlers.discarding());
+    }
+
+    private HttpRequest post(final String path, final String token, final Map<String, String> body) {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json");
+        if (token != null)
+            request.header("Authorization", "Bearer " + token);
+        try {
+            return request.POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body))).build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Sends a request and returns the {@code data} of the {@code ApiResponse}. */
+    private JsonNode send(final HttpRequest request) throws IOException, InterruptedException {
+        final HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        final JsonNode body = response.body().length == 0
+                ? MissingNode.getInstance()
+                : objectMapper.readTree(response.body());
+        if (response.statusCode() / 100 != 2)
+            throw new IllegalStateException(request.uri().getPath() + " returned " + response.statusCode() + ": "
+                    + body.path("message").asText());
+        return body.path("data");
+    }
+
+    @Override
+    public void close() {
+        redisConnection.close();
+        redisClient.shutdown();
+    }
+}
@@ -0,0 +1,338 @@
+package com.hethond.chatbackend.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * End-to-end load test: signs up synthetic users, connects each of them over STOMP and posts messages
+ * at a fixed rate, recording the time from the intended POST until each member receives the message.
+ * Messages are posted over HTTP, or sent over the users' STOMP connections with {@code --transport=stomp}.
+ * <p>
+ * Send times are taken from the posting schedule rather than from when a request actually left, so a
+ * stalled server shows up as latency instead of as a lower posting rate. Start a server with
+ * {@code ./gradlew bootRun -Ploadtest} and run {@code ./gradlew loadtest --args="..."}; see
+ * {@link LoadTestOptions} for the options.
+ */
+public class LoadGenerator implements AutoCloseable {
+    private static final String PASSWORD = "loadtest-password";
+    private static final String CONTENT_MARKER = "lt:";
+    private static final String REQUEST_ID_HEADER = "request-id";
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final LoadTestOptions options;
+    private final ChatApiClient api;
+    private final WebSocketStompClient stompClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<List<ChatApiClient.Session>> channelMembers = new ArrayList<>();
+    private final Map<UUID, StompSession> stompSessions = new ConcurrentHashMap<>();
+
+    private final Histogram postLatency = new ConcurrentHistogram(3);
+    private final Histogram deliveryLatency = new ConcurrentHistogram(3);
+    private final LongAdder measuredPosts = new LongAdder();
+    private final LongAdder failedPosts = new LongAdder();
+    private final LongAdder expectedDeliveries = new LongAdder();
+    private final LongAdder receivedDeliveries = new LongAdder();
+    private final AtomicLong inFlightPosts = new AtomicLong();
+    private volatile long measureFromNanos = Long.MAX_VALUE;
+
+    public static void main(String[] args) throws Exception {
+        final LoadTestOptions options = LoadTestOptions.parse(args);
+        try (LoadGenerator generator = new LoadGenerator(options)) {
+            generator.run();
+        }
+    }
+
+    public LoadGenerator(final LoadTestOptions options) {
+        this.options = options;
+        this.api = new ChatApiClient(options.baseUrl(), options.redisUri());
+        this.stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        this.stompClient.setDefaultHeartbeat(new long[]{0, 0});
+    }
+
+    public void run() throws Exception {
+        signUpUsers();
+        connectUsers();
+        postMessages();
+        awaitDeliveries();
+        report(System.out);
+    }
+
+    private void signUpUsers() throws Exception {
+        final long started = System.nanoTime();
+        final String runId = String.format("%06d", ThreadLocalRandom.current().nextInt(1_000_000));
+        final List<Future<ChatApiClient.Session>> signUps = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(options.setupConcurrency());
+        try {
+            for (int i = 0; i < options.users(); i++) {
+                final String username = "lt" + runId + "-" + i;
+                final String phone = "+99" + runId + String.format("%07d", i);
+                signUps.add(executor.submit(() -> api.signUp(username, phone, PASSWORD)));
+            }
+            for (int channel = 0; channel < options.channels(); channel++)
+                channelMembers.add(new ArrayList<>());
+            for (int i = 0; i < signUps.size(); i++)
+                channelMembers.get(i % options.channels()).add(signUps.get(i).get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Sequential, so concurrent updates of the same channel's member list cannot conflict.
+        for (int channel = 0; channel < channelMembers.size(); channel++) {
+            for (ChatApiClient.Session member : channelMembers.get(channel))
+                api.addMember(member, channelId(channel), member.userId());
+        }
+        System.out.printf("Signed up %d users in %d channel(s) in %d ms%n",
+                options.users(), options.channels(), (System.nanoTime() - started) / NANOS_PER_MILLI);
+    }
+
+    private void connectUsers() throws Exception {
+        final long started = System.nanoTime();
+        final Map<UUID, CompletableFuture<StompSession>> batch = new LinkedHashMap<>();
+        for (int channel = 0; channel < channelMembers.size(); channel++) {
+            final String destination = options.topicSubscriptions()
+                    ? "/topic/channels/" + channelId(channel)
+                    : "/user/topic/messages";
+            for (ChatApiClient.Session member : channelMembers.get(channel)) {
+                batch.put(member.userId(), stompClient.connectAsync(options.webSocketUrl(member.token()),
+                        new WebSocketHttpHeaders(), new StompHeaders(), new SubscribingHandler(destination)));
+                if (batch.size() == options.setupConcurrency())
+                    awaitConnected(batch);
+            }
+        }
+        awaitConnected(batch);
+        // Subscriptions are not acknowledged; give the broker a moment to register the last ones.
+        TimeUnit.SECONDS.sleep(1);
+        System.out.printf("Connected %d STOMP sessions in %d ms%n",
+                stompSessions.size(), (System.nanoTime() - started) / NANOS_PER_MILLI);
+    }
+
+    private void awaitConnected(final Map<UUID, CompletableFuture<StompSession>> batch) throws Exception {
+        for (Map.Entry<UUID, CompletableFuture<StompSession>> session : batch.entrySet())
+            stompSessions.put(session.getKey(), session.getValue().get(30, TimeUnit.SECONDS));
+        batch.clear();
+    }
+
+    private void postMessages() {
+        final long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.ratePerSecond());
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds() + options.durationSeconds());
+        measureFromNanos = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        final String padding = "x".repeat(Math.max(0, options.messageSize() - 32));
+        System.out.printf("Posting %.1f messages/s for %d s (%d s warm-up)%n",
+                options.ratePerSecond(), options.warmupSeconds() + options.durationSeconds(), options.warmupSeconds());
+
+        for (long i = 0; ; i++) {
+            final long intended = start + i * intervalNanos;
+            if (intended >= end)
+                break;
+            long now;
+            while ((now = System.nanoTime()) < intended)
+                LockSupport.parkNanos(intended - now);
+
+            final int channel = ThreadLocalRandom.current().nextInt(channelMembers.size());
+            final List<ChatApiClient.Session> members = channelMembers.get(channel);
+            final ChatApiClient.Session author = members.get(ThreadLocalRandom.current().nextInt(members.size()));
+            final String content = CONTENT_MARKER + intended + ":" + padding;
+
+            inFlightPosts.incrementAndGet();
+            if (options.stompSends()) {
+                sendOverStomp(author, channel, intended, content);
+            } else {
+                api.postMessageAsync(author, channelId(channel), content).whenComplete((response, error) ->
+                        completePost(intended, channel, error == null && response.statusCode() / 100 == 2));
+            }
+        }
+    }
+
+    /**
+     * Sends with the intended send time and channel as request id; {@link #onReceipt} completes the post.
+     */
+    private void sendOverStomp(final ChatApiClient.Session author, final int channel, final long intended,
+                               final String content) {
+        final StompHeaders headers = new StompHeaders();
+        headers.setDestination("/app/channels/" + channelId(channel) + "/messages");
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.set(REQUEST_ID_HEADER, intended + ":" + channel);
+        try {
+            stompSessions.get(author.userId()).send(headers, objectMapper.writeValueAsBytes(Map.of("content", content)));
+        } catch (JsonProcessingException | RuntimeException e) {
+            completePost(intended, channel, false);
+        }
+    }
+
+    private void completePost(final long intended, final int channel, final boolean succeeded) {
+        if (!succeeded) {
+            failedPosts.increment();
+        } else if (intended >= measureFromNanos) {
+            postLatency.recordValue(System.nanoTime() - intended);
+            measuredPosts.increment();
+            expectedDeliveries.add(channelMembers.get(channel).size());
+        }
+        inFlightPosts.decrementAndGet();
+    }
+
+    private void awaitDeliveries() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.drainSeconds());
+        while (System.nanoTime() < deadline
+                && (inFlightPosts.get() > 0 || receivedDeliveries.sum() < expectedDeliveries.sum()))
+            TimeUnit.MILLISECONDS.sleep(50);
+    }
+
+    private void report(final PrintStream out) throws IOException {
+        final long expected = expectedDeliveries.sum();
+        final long received = receivedDeliveries.sum();
+        out.println();
+        out.printf("Users: %d in %d channel(s), subscribed to %s%n", options.users(), options.channels(),
+                options.topicSubscriptions() ? "/topic/channels/{id}" : "/user/topic/messages");
+        out.printf("Posts: %d measured (%.1f/s), %d failed%n", measuredPosts.sum(),
+                measuredPosts.sum() / (double) options.durationSeconds(), failedPosts.sum());
+        out.printf("Deliveries: %d of %d received (%.1f/s), %d missing%n", received, expected,
+                received / (double) options.durationSeconds(), Math.max(0, expected - received));
+        out.println();
+        out.printf("%-20s %9s %9s %9s %9s %9s  (ms)%n", "", "p50", "p90", "p99", "p99.9", "max");
+        printPercentiles(out, options.stompSends() ? "SEND to receipt" : "POST response", postLatency);
+        printPercentiles(out, "POST to delivery", deliveryLatency);
+
+        if (options.histogramFile() != null) {
+            try (PrintStream file = new PrintStream(options.histogramFile())) {
+                deliveryLatency.outputPercentileDistribution(file, (double) NANOS_PER_MILLI);
+            }
+            out.println("Delivery latency distribution written to " + options.histogramFile());
+        }
+    }
+
+    private static void printPercentiles(final PrintStream out, final String label, final Histogram histogram) {
+        out.printf("%-20s %9.2f %9.2f %9.2f %9.2f %9.2f%n", label,
+                toMillis(histogram.getValueAtPercentile(50)),
+                toMillis(histogram.getValueAtPercentile(90)),
+                toMillis(histogram.getValueAtPercentile(99)),
+                toMillis(histogram.getValueAtPercentile(99.9)),
+                toMillis(histogram.getMaxValue()));
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / (double) NANOS_PER_MILLI;
+    }
+
+    private static long channelId(final int channelIndex) {
+        return channelIndex + 1;
+    }
+
+    private void onDelivery(final byte[] payload) {
+        final long receivedAt = System.nanoTime();
+        final String content;
+        try {
+            content = objectMapper.readTree(payload).path("content").asText();
+        } catch (IOException e) {
+            System.err.println("Unreadable message frame: " + e.getMessage());
+            return;
+        }
+        if (!content.startsWith(CONTENT_MARKER))
+            return;
+
+        final int end = content.indexOf(':', CONTENT_MARKER.length());
+        final long intended = Long.parseLong(content.substring(CONTENT_MARKER.length(), end));
+        if (intended >= measureFromNanos) {
+            deliveryLatency.recordValue(receivedAt - intended);
+            receivedDeliveries.increment();
+        }
+    }
+
+    private void onReceipt(final byte[] payload) {
+        final JsonNode receipt;
+        try {
+            receipt = objectMapper.readTree(payload);
+        } catch (IOException e) {
+            System.err.println("Unreadable receipt frame: " + e.getMessage());
+            return;
+        }
+        final String requestId = receipt.path("data").path("requestId").asText();
+        final int separator = requestId.indexOf(':');
+        if (separator < 0)
+            return;
+        completePost(Long.parseLong(requestId.substring(0, separator)),
+                Integer.parseInt(requestId.substring(separator + 1)),
+                receipt.path("code").asText().equals("SUCCESS"));
+    }
+
+    private class SubscribingHandler extends StompSessionHandlerAdapter {
+        private final String destination;
+
+        private SubscribingHandler(final String destination) {
+            this.destination = destination;
+        }
+
+        @Override
+        public void afterConnected(final StompSession session, final StompHeaders connectedHeaders) {
+            session.subscribe(destination, new BytesFrameHandler(LoadGenerator.this::onDelivery));
+            if (options.stompSends())
+                session.subscribe("/user/topic/receipts", new BytesFrameHandler(LoadGenerator.this::onReceipt));
+        }
+
+        @Override
+        public void handleException(final StompSession session, final StompCommand command, final StompHeaders headers,
+                                    final byte[] payload, final Throwable exception) {
+            System.err.println("STOMP error on " + destination + ": " + exception.getMessage());
+        }
+
+        @Override
+        public void handleTransportError(final StompSession session, final Throwable exception) {
+            System.err.println("STOMP transport error: " + exception.getMessage());
+        }
+    }
+
+    private record BytesFrameHandler(Consumer<byte[]> consumer) implements StompFrameHandler {
+        @Override
+        public Type getPayloadType(final StompHeaders headers) {
+            return byte[].class;
+        }
+
+        @Override
+        public void handleFrame(final StompHeaders headers, final Object payload) {
+            consumer.accept((byte[]) payload);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (StompSession session : stompSessions.values()) {
+            if (session.isConnected())
+                session.disconnect();
+        }
+        stompClient.stop();
+        api.close();
+    }
+}
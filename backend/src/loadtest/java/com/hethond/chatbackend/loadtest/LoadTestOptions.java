@@ -0,0 +1,95 @@
+package com.hethond.chatbackend.loadtest;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line options of the load generator, given as {@code --name=value}:
+ * <ul>
+ *     <li>{@code baseUrl} (http://localhost:8080/api) and {@code redis} (redis://localhost:6379), where
+ *     verification codes are read from</li>
+ *     <li>{@code users} (100) spread round-robin over {@code channels} (1, at most {@link #SEEDED_CHANNELS})</li>
+ *     <li>{@code rate} (50) posts per second over all users, for {@code warmup} (10) plus {@code duration} (60)
+ *     seconds, then {@code drain} (5) seconds to collect outstanding deliveries</li>
+ *     <li>{@code setupConcurrency} (16) parallel registrations and logins</li>
+ *     <li>{@code messageSize} (64) characters per message</li>
+ *     <li>{@code subscription} (user) to receive on /user/topic/messages, or topic for /topic/channels/{id}</li>
+ *     <li>{@code transport} (http) to post through POST /channels/{id}/messages, or stomp to SEND to
+ *     /app/channels/{id}/messages and time the POST column until the receipt</li>
+ *     <li>{@code histogramFile} to also write the full delivery latency distribution</li>
+ * </ul>
+ */
+public record LoadTestOptions(URI baseUrl,
+                              String redisUri,
+                              int users,
+                              int channels,
+                              double ratePerSecond,
+                              int warmupSeconds,
+                              int durationSeconds,
+                              int drainSeconds,
+                              int setupConcurrency,
+                              int messageSize,
+                              boolean topicSubscriptions,
+                              boolean stompSends,
+                              String histogramFile) {
+    /** Channels seeded by the loadtest profile. */
+    public static final int SEEDED_CHANNELS = 10;
+
+    private static final Set<String> KNOWN_OPTIONS = Set.of(
+            "baseUrl", "redis", "users", "channels", "rate", "warmup", "duration", "drain",
+            "setupConcurrency", "messageSize", "subscription", "transport", "histogramFile");
+
+    public static LoadTestOptions parse(final String[] args) {
+        final Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            final int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        final String subscription = values.getOrDefault("subscription", "user");
+        if (!subscription.equals("user") && !subscription.equals("topic"))
+            throw new IllegalArgumentException("--subscription must be user or topic");
+        final String transport = values.getOrDefault("transport", "http");
+        if (!transport.equals("http") && !transport.equals("stomp"))
+            throw new IllegalArgumentException("--transport must be http or stomp");
+
+        final LoadTestOptions options = new LoadTestOptions(
+                URI.create(stripTrailingSlash(values.getOrDefault("baseUrl", "http://localhost:8080/api"))),
+                values.getOrDefault("redis", "redis://localhost:6379"),
+                Integer.parseInt(values.getOrDefault("users", "100")),
+                Integer.parseInt(values.getOrDefault("channels", "1")),
+                Double.parseDouble(values.getOrDefault("rate", "50")),
+                Integer.parseInt(values.getOrDefault("warmup", "10")),
+                Integer.parseInt(values.getOrDefault("duration", "60")),
+                Integer.parseInt(values.getOrDefault("drain", "5")),
+                Integer.parseInt(values.getOrDefault("setupConcurrency", "16")),
+                Integer.parseInt(values.getOrDefault("messageSize", "64")),
+                subscription.equals("topic"),
+                transport.equals("stomp"),
+                values.get("histogramFile")
+        );
+        values.keySet().removeAll(KNOWN_OPTIONS);
+        if (!values.isEmpty())
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        if (options.channels < 1 || options.channels > SEEDED_CHANNELS)
+            throw new IllegalArgumentException("--channels must be between 1 and " + SEEDED_CHANNELS);
+        if (options.users < options.channels)
+            throw new IllegalArgumentException("--users must be at least --channels");
+        if (options.ratePerSecond <= 0)
+            throw new IllegalArgumentException("--rate must be positive");
+        return options;
+    }
+
+    private static String stripTrailingSlash(final String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    public URI webSocketUrl(final String token) {
+        final String scheme = baseUrl.getScheme().equals("https") ? "wss" : "ws";
+        return URI.create(scheme + "://" + baseUrl.getAuthority() + baseUrl.getPath() + "/ws?token=" + token);
+    }
+}
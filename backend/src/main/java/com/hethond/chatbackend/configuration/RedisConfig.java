@@ -5,6 +5,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 @Configuration
 public class RedisConfig {
@@ -26,4 +28,19 @@ public class RedisConfig {
         }
         return new LettuceConnectionFactory(config);
     }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(LettuceConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        // A single listener thread keeps relayed messages in publish order.
+        ThreadPoolTaskExecutor listenerExecutor = new ThreadPoolTaskExecutor();
+        listenerExecutor.setCorePoolSize(1);
+        listenerExecutor.setMaxPoolSize(1);
+        listenerExecutor.setThreadNamePrefix("redis-listener-");
+        listenerExecutor.setDaemon(true);
+        listenerExecutor.initialize();
+        container.setTaskExecutor(listenerExecutor);
+        return container;
+    }
 }
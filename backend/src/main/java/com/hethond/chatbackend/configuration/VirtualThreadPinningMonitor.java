@@ -0,0 +1,56 @@
+package com.hethond.chatbackend.configuration;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Logs virtual threads that stay pinned to their carrier longer than a threshold, for example
+ * when blocking inside a {@code synchronized} block, using the JFR {@code jdk.VirtualThreadPinned} event.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final int LOGGED_FRAMES = 8;
+
+    private final RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(final @Value("${app.virtualThreadPinningThresholdMillis:20}") long thresholdMillis) {
+        this.recordingStream = new RecordingStream();
+        recordingStream.enable("jdk.VirtualThreadPinned")
+                .withThreshold(Duration.ofMillis(thresholdMillis))
+                .withStackTrace();
+        recordingStream.onEvent("jdk.VirtualThreadPinned", this::logPinnedEvent);
+        recordingStream.startAsync();
+
+        logger.info("VirtualThreadPinningMonitor started with a threshold of {} ms.", thresholdMillis);
+    }
+
+    private void logPinnedEvent(final RecordedEvent event) {
+        final RecordedStackTrace stackTrace = event.getStackTrace();
+        final List<RecordedFrame> frames = stackTrace != null ? stackTrace.getFrames() : List.of();
+        final String topFrames = frames.stream()
+                .limit(LOGGED_FRAMES)
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n\tat "));
+        logger.warn("Virtual thread pinned for {} ms\n\tat {}", event.getDuration().toMillis(), topFrames);
+    }
+
+    @Override
+    public void destroy() {
+        recordingStream.close();
+    }
+}
@@ -32,7 +32,7 @@ public class WebSecurityConfig {
                 .requestMatchers("/ws/**").permitAll()
                 .requestMatchers(HttpMethod.POST, "/auth/*").permitAll()
                 .requestMatchers("/health", "/status", "/info").permitAll()
-                .requestMatchers("/users").hasRole("ADMIN")
+                .requestMatchers("/users", "/actuator/**").hasRole("ADMIN")
                 .anyRequest().authenticated()
         );
 
@@ -1,9 +1,16 @@
 package com.hethond.chatbackend.configuration;
 
+import com.hethond.chatbackend.security.ChannelSubscriptionInterceptor;
 import com.hethond.chatbackend.security.HandshakeHandler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
@@ -12,17 +19,34 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     private final HandshakeHandler handshakeHandler;
+    private final ChannelSubscriptionInterceptor channelSubscriptionInterceptor;
+    private final boolean virtualThreads;
+    private final long heartbeatMillis;
+    private final TaskScheduler brokerTaskScheduler;
 
     @Autowired
-    public WebSocketConfig(final HandshakeHandler handshakeHandler) {
+    public WebSocketConfig(final HandshakeHandler handshakeHandler,
+                           final ChannelSubscriptionInterceptor channelSubscriptionInterceptor,
+                           final @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                           final @Value("${app.stompHeartbeatMillis:10000}") long heartbeatMillis,
+                           final @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler brokerTaskScheduler) {
         this.handshakeHandler = handshakeHandler;
+        this.channelSubscriptionInterceptor = channelSubscriptionInterceptor;
+        this.virtualThreads = virtualThreads;
+        this.heartbeatMillis = heartbeatMillis;
+        this.brokerTaskScheduler = brokerTaskScheduler;
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        // Clients that negotiate heartbeats and then fall silent are disconnected, which takes them offline in PresenceRegistry.
+        registry.enableSimpleBroker("/topic")
+                .setHeartbeatValue(new long[]{heartbeatMillis, heartbeatMillis})
+                .setTaskScheduler(heartbeatMillis > 0 ? brokerTaskScheduler : null);
         registry.setUserDestinationPrefix("/user");
         registry.setApplicationDestinationPrefixes("/app");
+        // Fan-out partitions already order messages per channel; keep that order per session on the way out.
+        registry.setPreservePublishOrder(true);
     }
 
     @Override
@@ -30,6 +54,26 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .addInterceptors(handshakeHandler);
+        // Messages sent on one connection are handled in the order they arrive.
+        registry.setPreserveReceiveOrder(true);
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(channelSubscriptionInterceptor);
+        if (virtualThreads)
+            registration.executor(virtualThreadExecutor("ws-inbound-"));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreads)
+            registration.executor(virtualThreadExecutor("ws-outbound-"));
+    }
+
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        return executor;
+    }
 }
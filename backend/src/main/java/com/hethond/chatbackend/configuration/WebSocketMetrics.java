@@ -0,0 +1,46 @@
+package com.hethond.chatbackend.configuration;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gauges for connected STOMP clients and for frames waiting to be written to them.
+ */
+@Component
+public class WebSocketMetrics {
+    @Autowired
+    public WebSocketMetrics(final SimpUserRegistry userRegistry,
+                            final @Qualifier("clientOutboundChannelExecutor") TaskExecutor outboundExecutor,
+                            final MeterRegistry meterRegistry) {
+        Gauge.builder("chat.websocket.users", userRegistry, SimpUserRegistry::getUserCount)
+                .description("Users with at least one STOMP session on this node")
+                .register(meterRegistry);
+        Gauge.builder("chat.websocket.sessions", userRegistry, WebSocketMetrics::countSessions)
+                .description("STOMP sessions on this node")
+                .register(meterRegistry);
+
+        // With virtual threads the outbound channel has no queue; each frame gets its own thread.
+        if (outboundExecutor instanceof ThreadPoolTaskExecutor pool) {
+            Gauge.builder("chat.websocket.outbound.queue.depth", pool, ThreadPoolTaskExecutor::getQueueSize)
+                    .description("Frames waiting for a clientOutboundChannel thread")
+                    .register(meterRegistry);
+            Gauge.builder("chat.websocket.outbound.active", pool, ThreadPoolTaskExecutor::getActiveCount)
+                    .description("clientOutboundChannel threads writing to a session")
+                    .register(meterRegistry);
+        }
+    }
+
+    private static double countSessions(final SimpUserRegistry userRegistry) {
+        long sessions = 0;
+        for (SimpUser user : userRegistry.getUsers())
+            sessions += user.getSessions().size();
+        return sessions;
+    }
+}
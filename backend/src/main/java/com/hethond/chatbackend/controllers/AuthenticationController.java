@@ -8,6 +8,7 @@ import com.hethond.chatbackend.entities.Role;
 import com.hethond.chatbackend.entities.User;
 import com.hethond.chatbackend.entities.dto.UserBasicDto;
 import com.hethond.chatbackend.services.AuthenticationService;
+import com.hethond.chatbackend.services.SessionService;
 import com.hethond.chatbackend.services.UserService;
 import com.hethond.chatbackend.services.VerificationService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +17,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -25,14 +27,17 @@ public class AuthenticationController {
     private final UserService userService;
     private final VerificationService verificationService;
     private final AuthenticationService authenticationService;
+    private final SessionService sessionService;
 
     @Autowired
     public AuthenticationController(UserService userService,
                                     VerificationService verificationService,
-                                    AuthenticationService authenticationService) {
+                                    AuthenticationService authenticationService,
+                                    SessionService sessionService) {
         this.userService = userService;
         this.verificationService = verificationService;
         this.authenticationService = authenticationService;
+        this.sessionService = sessionService;
     }
 
     public record LoginBody(String username, String password) {}
@@ -44,6 +49,14 @@ public class AuthenticationController {
         return ResponseEntity.ok(ApiResponse.success(sessionToken));
     }
 
+    @PostMapping("/logout")
+    public ResponseEntity<ApiResponse<Object>> logout(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+        if (authHeader == null || !authHeader.startsWith("Bearer "))
+            throw new ApiException(HttpStatus.BAD_REQUEST.value(), "Missing bearer token.");
+        sessionService.invalidateSession(authHeader.substring(7));
+        return ResponseEntity.ok(ApiResponse.success(null));
+    }
+
     public record VerificationBody(@JsonProperty("phone") String phone,
                                    @JsonProperty("code") String verificationCode) {}
 
@@ -2,20 +2,30 @@ package com.hethond.chatbackend.controllers;
 
 import com.hethond.chatbackend.response.ApiResponse;
 import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.dto.ChannelReadState;
+import com.hethond.chatbackend.entities.dto.ChannelWithUnreadDto;
 import com.hethond.chatbackend.entities.dto.ChannelWithUsersDto;
+import com.hethond.chatbackend.exceptions.ApiException;
+import com.hethond.chatbackend.security.AuthenticatedUser;
 import com.hethond.chatbackend.services.ChannelService;
+import com.hethond.chatbackend.services.UnreadCounterService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping("/channels")
 public class ChannelController {
     private final ChannelService channelService;
+    private final UnreadCounterService unreadCounterService;
 
     @Autowired
-    public ChannelController(ChannelService channelService) {
+    public ChannelController(ChannelService channelService,
+                             UnreadCounterService unreadCounterService) {
         this.channelService = channelService;
+        this.unreadCounterService = unreadCounterService;
     }
 
     @GetMapping("/{id}")
@@ -41,4 +51,16 @@ public class ChannelController {
         Channel channel = channelService.removeMemberFromChannel(id, java.util.UUID.fromString(userId));
         return ResponseEntity.ok(ApiResponse.success(ChannelWithUsersDto.fromChannel(channel)));
     }
+
+    @PostMapping("/{id}/read")
+    public ResponseEntity<ApiResponse<ChannelWithUnreadDto>> markChannelRead(@PathVariable long id) {
+        AuthenticatedUser user = (AuthenticatedUser) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Channel channel = channelService.findChannelById(id);
+        if (!channelService.isChannelMember(id, user.id()))
+            throw new ApiException(HttpStatus.FORBIDDEN.value(),
+                    "You don't have permission to read messages in this channel.");
+
+        ChannelReadState readState = unreadCounterService.markRead(id, user.id());
+        return ResponseEntity.ok(ApiResponse.success(ChannelWithUnreadDto.fromChannel(channel, readState)));
+    }
 }
@@ -1,40 +1,66 @@
 package com.hethond.chatbackend.controllers;
 
 import com.hethond.chatbackend.exceptions.ApiException;
+import com.hethond.chatbackend.exceptions.InactiveAccountException;
+import com.hethond.chatbackend.exceptions.NotFoundException;
 import com.hethond.chatbackend.response.ApiResponse;
+import com.hethond.chatbackend.response.ResponseCode;
+import com.hethond.chatbackend.entities.AccountStatus;
 import com.hethond.chatbackend.entities.Channel;
 import com.hethond.chatbackend.entities.Message;
-import com.hethond.chatbackend.entities.User;
 import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.entities.dto.MessageReceiptDto;
+import com.hethond.chatbackend.entities.dto.MessageSliceDto;
+import com.hethond.chatbackend.entities.dto.UserBasicDto;
+import com.hethond.chatbackend.security.AuthenticatedUser;
 import com.hethond.chatbackend.services.ChannelService;
+import com.hethond.chatbackend.services.MessageBroadcastService;
 import com.hethond.chatbackend.services.MessageService;
+import com.hethond.chatbackend.services.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.security.Principal;
+import java.util.UUID;
 
 @RestController
 public class MessageController {
+    private static final Logger logger = LoggerFactory.getLogger(MessageController.class);
+
+    public static final String RECEIPTS_DESTINATION = "/topic/receipts";
+    public static final String REQUEST_ID_HEADER = "request-id";
+
     private final MessageService messageService;
     private final ChannelService channelService;
-
-    private final SimpMessagingTemplate messagingTemplate;
+    private final MessageBroadcastService messageBroadcastService;
+    private final UserService userService;
 
     @Autowired
     public MessageController(final MessageService messageService,
                              final ChannelService channelService,
-                             final SimpMessagingTemplate messagingTemplate) {
+                             final MessageBroadcastService messageBroadcastService,
+                             final UserService userService) {
         this.messageService = messageService;
         this.channelService = channelService;
-        this.messagingTemplate = messagingTemplate;
+        this.messageBroadcastService = messageBroadcastService;
+        this.userService = userService;
     }
 
     @GetMapping("/channels/{channelId}/messages")
@@ -46,9 +72,42 @@ public class MessageController {
             @RequestParam(defaultValue = "ASC") String sortDirection) {
         Sort.Direction direction = Sort.Direction.fromString(sortDirection);
         Pageable pageable = PageRequest.of(page, size, Sort.by(direction, sortBy));
-        Page<Message> messages = messageService.findMessagesByChannelId(channelId, pageable);
-        Page<MessageBasicDto> messageDtoPage = messages.map(MessageBasicDto::fromMessage);
-        return ResponseEntity.ok(ApiResponse.success(messageDtoPage));
+        Page<MessageBasicDto> messages = messageService.findMessagesByChannelId(channelId, pageable);
+        return ResponseEntity.ok(ApiResponse.success(messages));
+    }
+
+    @GetMapping(value = "/channels/{channelId}/messages", params = "before")
+    public ResponseEntity<ApiResponse<MessageSliceDto>> getChannelMessagesBefore(
+            @PathVariable long channelId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "50") int size) {
+        Slice<MessageBasicDto> messages = messageService.findMessagesBefore(channelId, before, size);
+        return ResponseEntity.ok(ApiResponse.success(MessageSliceDto.fromSlice(messages)));
+    }
+
+    @GetMapping(value = "/channels/{channelId}/messages", params = "after")
+    public ResponseEntity<ApiResponse<MessageSliceDto>> getChannelMessagesAfter(
+            @PathVariable long channelId,
+            @RequestParam long after,
+            @RequestParam(defaultValue = "50") int size) {
+        Slice<MessageBasicDto> messages = messageService.findMessagesAfter(channelId, after, size);
+        return ResponseEntity.ok(ApiResponse.success(MessageSliceDto.fromSlice(messages)));
+    }
+
+    @GetMapping("/channels/{channelId}/messages/search")
+    public ResponseEntity<ApiResponse<MessageSliceDto>> searchChannelMessages(
+            @PathVariable long channelId,
+            @RequestParam String q,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "50") int size) {
+        AuthenticatedUser user = (AuthenticatedUser) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        channelService.findChannelById(channelId);
+        if (!channelService.isChannelMember(channelId, user.id()))
+            throw new ApiException(HttpStatus.FORBIDDEN.value(),
+                    "You don't have permission to search messages in this channel.");
+
+        Slice<MessageBasicDto> messages = messageService.searchMessages(channelId, q, before, size);
+        return ResponseEntity.ok(ApiResponse.success(MessageSliceDto.fromSlice(messages)));
     }
 
     public record MessageCreationObject(String content) {}
@@ -56,22 +115,80 @@ public class MessageController {
     public ResponseEntity<ApiResponse<MessageBasicDto>> addChannelMessage(
             @RequestBody MessageCreationObject messageCreationObject,
             @PathVariable long channelId) {
+        AuthenticatedUser author = (AuthenticatedUser) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        MessageBasicDto createdMessageDto = postMessage(channelId, author, messageCreationObject.content());
+        return ResponseEntity.ok(ApiResponse.success(createdMessageDto));
+    }
+
+    /**
+     * {@code SEND /app/channels/{channelId}/messages} on an open STOMP connection. The session was
+     * authenticated at the handshake, so only the (cached) account status is checked again here.
+     * The sender's session gets a receipt with the message id on {@code /user/topic/receipts}.
+     */
+    @MessageMapping("/channels/{channelId}/messages")
+    @SendToUser(destinations = RECEIPTS_DESTINATION, broadcast = false)
+    public ApiResponse<MessageReceiptDto> sendChannelMessage(
+            @Payload MessageCreationObject messageCreationObject,
+            @DestinationVariable long channelId,
+            @Header(name = REQUEST_ID_HEADER, required = false) String requestId,
+            Principal principal) {
+        AuthenticatedUser author = userService.findAuthenticatedUserById(UUID.fromString(principal.getName()));
+        if (author.accountStatus() == AccountStatus.BANNED)
+            throw new AccessDeniedException("Access Denied");
+        else if (author.accountStatus() == AccountStatus.INACTIVE)
+            throw new InactiveAccountException("Your account is inactive.");
+
+        MessageBasicDto createdMessageDto = postMessage(channelId, author, messageCreationObject.content());
+        return ApiResponse.success(MessageReceiptDto.accepted(requestId, createdMessageDto.getId()));
+    }
+
+    @MessageExceptionHandler
+    @SendToUser(destinations = RECEIPTS_DESTINATION, broadcast = false)
+    public ApiResponse<MessageReceiptDto> handleSendException(
+            Exception e,
+            @Header(name = REQUEST_ID_HEADER, required = false) String requestId) {
+        final ResponseCode code;
+        final String message;
+        if (e instanceof ApiException apiException) {
+            code = switch (HttpStatus.valueOf(apiException.getCode())) {
+                case BAD_REQUEST -> ResponseCode.BAD_REQUEST;
+                case UNAUTHORIZED -> ResponseCode.UNAUTHORIZED;
+                case FORBIDDEN -> ResponseCode.FORBIDDEN;
+                case NOT_FOUND -> ResponseCode.NOT_FOUND;
+                case CONFLICT -> ResponseCode.CONFLICT;
+                case SERVICE_UNAVAILABLE -> ResponseCode.SERVICE_UNAVAILABLE;
+                default -> ResponseCode.INTERNAL_SERVER_ERROR;
+            };
+            message = apiException.getMessage();
+        } else if (e instanceof NotFoundException) {
+            code = ResponseCode.NOT_FOUND;
+            message = e.getMessage();
+        } else if (e instanceof AccessDeniedException) {
+            code = ResponseCode.ACCESS_DENIED;
+            message = "Access Denied";
+        } else if (e instanceof InactiveAccountException) {
+            code = ResponseCode.ACCOUNT_INACTIVE;
+            message = "Your account is inactive.";
+        } else {
+            logger.error("Failed to handle message sent over STOMP.", e);
+            code = ResponseCode.INTERNAL_SERVER_ERROR;
+            message = "An internal error has occurred. Please contact support or try again later.";
+        }
+        return new ApiResponse<>(code, message, MessageReceiptDto.rejected(requestId));
+    }
+
+    private MessageBasicDto postMessage(long channelId, AuthenticatedUser author, String content) {
         Channel channel = channelService.findChannelById(channelId);
-        User author = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        if (!channel.hasMemberWithId(author.getId()))
+        if (!channelService.isChannelMember(channelId, author.id()))
             throw new ApiException(HttpStatus.FORBIDDEN.value(),
                     "You don't have permission to create messages in this channel.");
 
         Message createdMessage = messageService.saveMessage(
-                new Message(author, channel, messageCreationObject.content())
+                new Message(userService.getUserReference(author.id()), channel, content)
         );
-        MessageBasicDto createdMessageDto = MessageBasicDto.fromMessage(createdMessage);
-
-        // TODO -- separate concerns (create a service for this part)
-        for (User recipient : channel.getMembers()) {
-            messagingTemplate.convertAndSendToUser(recipient.getId().toString(), "/topic/messages", createdMessageDto);
-        }
-
-        return ResponseEntity.ok(ApiResponse.success(createdMessageDto));
+        MessageBasicDto createdMessageDto = MessageBasicDto.fromMessage(createdMessage,
+                UserBasicDto.fromAuthenticatedUser(author));
+        messageBroadcastService.broadcast(channelId, createdMessageDto);
+        return createdMessageDto;
     }
 }
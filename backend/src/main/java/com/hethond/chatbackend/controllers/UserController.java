@@ -3,6 +3,8 @@ package com.hethond.chatbackend.controllers;
 import com.hethond.chatbackend.response.ApiResponse;
 import com.hethond.chatbackend.entities.User;
 import com.hethond.chatbackend.entities.dto.UserWithChannelsDto;
+import com.hethond.chatbackend.security.AuthenticatedUser;
+import com.hethond.chatbackend.services.UnreadCounterService;
 import com.hethond.chatbackend.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -16,10 +18,13 @@ import java.util.UUID;
 @RequestMapping("/users")
 public class UserController {
     private final UserService userService;
+    private final UnreadCounterService unreadCounterService;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService,
+                          UnreadCounterService unreadCounterService) {
         this.userService = userService;
+        this.unreadCounterService = unreadCounterService;
     }
 
     // TODO -- This may only be used by Admins
@@ -39,8 +44,10 @@ public class UserController {
 
     @GetMapping("/@me")
     public ResponseEntity<ApiResponse<UserWithChannelsDto>> getUserByMe() {
-        User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        UserWithChannelsDto userDto = UserWithChannelsDto.fromUser(user);
+        AuthenticatedUser principal = (AuthenticatedUser) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        User user = userService.findUserById(principal.id());
+        UserWithChannelsDto userDto = UserWithChannelsDto.fromUser(user,
+                unreadCounterService.getReadStates(principal.id()));
         return ResponseEntity.ok(ApiResponse.success(userDto));
     }
 
@@ -1,14 +1,19 @@
 package com.hethond.chatbackend.entities;
 
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 
 @Entity
-@Table(name = "messages")
-public class Message {
+@Table(name = "messages",
+        indexes = @Index(name = "idx_messages_channel_id_id", columnList = "channel_id, id"))
+public class Message implements Persistable<Long> {
+    // Assigned by MessageIdGenerator before insert; rows created before that keep their auto-increment ids.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
 
+    @Transient
+    private boolean isNew = true;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User author;
@@ -27,7 +32,8 @@ public class Message {
         this.content = content;
     }
 
-    public long getId() {
+    @Override
+    public Long getId() {
         return id;
     }
 
@@ -58,4 +64,15 @@ public class Message {
     public void setChannel(Channel channel) {
         this.channel = channel;
     }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostPersist
+    @PostLoad
+    void markNotNew() {
+        this.isNew = false;
+    }
 }
@@ -1,5 +1,7 @@
 package com.hethond.chatbackend.entities.dto;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.hethond.chatbackend.entities.Channel;
 
 public class ChannelBasicDto {
@@ -10,7 +12,9 @@ public class ChannelBasicDto {
     private final long id;
     private final String name;
 
-    protected ChannelBasicDto(long id, String name) {
+    @JsonCreator
+    protected ChannelBasicDto(@JsonProperty("id") long id,
+                              @JsonProperty("name") String name) {
         this.id = id;
         this.name = name;
     }
@@ -0,0 +1,8 @@
+package com.hethond.chatbackend.entities.dto;
+
+import java.util.UUID;
+
+/**
+ * A channel membership, selected directly by {@code ChannelRepository}.
+ */
+public record ChannelMemberProjection(long channelId, UUID memberId) {}
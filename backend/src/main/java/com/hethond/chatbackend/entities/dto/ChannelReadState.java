@@ -0,0 +1,9 @@
+package com.hethond.chatbackend.entities.dto;
+
+/**
+ * A user's read marker and unread message count in one channel, as kept by {@code UnreadCounterService}.
+ * {@code lastReadMessageId} is null until the user first marks the channel read.
+ */
+public record ChannelReadState(long unreadCount, Long lastReadMessageId) {
+    public static final ChannelReadState NONE = new ChannelReadState(0, null);
+}
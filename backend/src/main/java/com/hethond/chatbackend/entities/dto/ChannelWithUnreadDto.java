@@ -0,0 +1,27 @@
+package com.hethond.chatbackend.entities.dto;
+
+import com.hethond.chatbackend.entities.Channel;
+
+public class ChannelWithUnreadDto extends ChannelBasicDto {
+    public static ChannelWithUnreadDto fromChannel(Channel channel, ChannelReadState readState) {
+        return new ChannelWithUnreadDto(channel.getId(), channel.getName(),
+                readState.unreadCount(), readState.lastReadMessageId());
+    }
+
+    private final long unreadCount;
+    private final Long lastReadMessageId;
+
+    protected ChannelWithUnreadDto(long id, String name, long unreadCount, Long lastReadMessageId) {
+        super(id, name);
+        this.unreadCount = unreadCount;
+        this.lastReadMessageId = lastReadMessageId;
+    }
+
+    public long getUnreadCount() {
+        return unreadCount;
+    }
+
+    public Long getLastReadMessageId() {
+        return lastReadMessageId;
+    }
+}
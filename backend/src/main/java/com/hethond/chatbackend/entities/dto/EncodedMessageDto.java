@@ -0,0 +1,47 @@
+package com.hethond.chatbackend.entities.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link MessageBasicDto} together with its JSON encoding. The message is
+ * serialized exactly once and the same bytes are shared by every recipient.
+ */
+public class EncodedMessageDto {
+    public static EncodedMessageDto fromMessageDto(MessageBasicDto message, ObjectMapper objectMapper) {
+        try {
+            return new EncodedMessageDto(message, objectMapper.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode message [" + message.getId() + "].", e);
+        }
+    }
+
+    private final MessageBasicDto message;
+    private final byte[] payload;
+
+    protected EncodedMessageDto(MessageBasicDto message, byte[] payload) {
+        this.message = message;
+        this.payload = payload;
+    }
+
+    public MessageBasicDto getMessage() {
+        return message;
+    }
+
+    public ByteBuffer getPayload() {
+        return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
+    public int getPayloadLength() {
+        return payload.length;
+    }
+
+    /**
+     * Returns the shared payload array itself. Callers must treat it as read-only.
+     */
+    public byte[] getPayloadBytes() {
+        return payload;
+    }
+}
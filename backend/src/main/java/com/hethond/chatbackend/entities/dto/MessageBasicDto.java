@@ -1,21 +1,38 @@
 package com.hethond.chatbackend.entities.dto;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.hethond.chatbackend.entities.Message;
 
 public class MessageBasicDto {
     public static MessageBasicDto fromMessage(Message message) {
+        return fromMessage(message, UserBasicDto.fromUser(message.getAuthor()));
+    }
+
+    public static MessageBasicDto fromMessage(Message message, UserBasicDto author) {
         return new MessageBasicDto(message.getId(),
-                UserBasicDto.fromUser(message.getAuthor()),
+                author,
                 ChannelBasicDto.fromChannel(message.getChannel()),
                 message.getContent());
     }
 
+    public static MessageBasicDto fromProjection(MessageProjection projection) {
+        return new MessageBasicDto(projection.id(),
+                new UserBasicDto(projection.authorId(), null, projection.authorUsername()),
+                new ChannelBasicDto(projection.channelId(), projection.channelName()),
+                projection.content());
+    }
+
     private final long id;
     private final UserBasicDto author;
     private final ChannelBasicDto channel;
     private final String content;
 
-    protected MessageBasicDto(long id, UserBasicDto author, ChannelBasicDto channel, String content) {
+    @JsonCreator
+    protected MessageBasicDto(@JsonProperty("id") long id,
+                              @JsonProperty("author") UserBasicDto author,
+                              @JsonProperty("channel") ChannelBasicDto channel,
+                              @JsonProperty("content") String content) {
         this.id = id;
         this.author = author;
         this.channel = channel;
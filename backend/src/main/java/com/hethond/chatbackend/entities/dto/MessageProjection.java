@@ -0,0 +1,14 @@
+package com.hethond.chatbackend.entities.dto;
+
+import java.util.UUID;
+
+/**
+ * Flat row for message history, selected directly by {@code MessageRepository}
+ * so that a page of history is a single statement without managed entities.
+ */
+public record MessageProjection(long id,
+                                String content,
+                                UUID authorId,
+                                String authorUsername,
+                                long channelId,
+                                String channelName) {}
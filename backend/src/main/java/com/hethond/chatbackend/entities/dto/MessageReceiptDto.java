@@ -0,0 +1,38 @@
+package com.hethond.chatbackend.entities.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Reply to a message sent over STOMP, correlated by the {@code request-id} header of the SEND frame.
+ */
+public class MessageReceiptDto {
+    public static MessageReceiptDto accepted(String requestId, long messageId) {
+        return new MessageReceiptDto(requestId, messageId);
+    }
+
+    public static MessageReceiptDto rejected(String requestId) {
+        return new MessageReceiptDto(requestId, null);
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String requestId;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Long messageId;
+
+    protected MessageReceiptDto(String requestId, Long messageId) {
+        this.requestId = requestId;
+        this.messageId = messageId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * The id of the persisted message, or {@code null} when the message was rejected.
+     */
+    public Long getMessageId() {
+        return messageId;
+    }
+}
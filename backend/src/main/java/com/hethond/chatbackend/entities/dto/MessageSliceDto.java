@@ -0,0 +1,32 @@
+package com.hethond.chatbackend.entities.dto;
+
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+public class MessageSliceDto {
+    public static MessageSliceDto fromSlice(Slice<MessageBasicDto> slice) {
+        final List<MessageBasicDto> messages = slice.getContent();
+        final Long nextCursor = slice.hasNext() ? messages.getLast().getId() : null;
+        return new MessageSliceDto(messages, nextCursor);
+    }
+
+    private final List<MessageBasicDto> messages;
+    private final Long nextCursor;
+
+    protected MessageSliceDto(List<MessageBasicDto> messages, Long nextCursor) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<MessageBasicDto> getMessages() {
+        return messages;
+    }
+
+    /**
+     * The id to pass as the next {@code before}/{@code after} cursor, or {@code null} when there are no more messages.
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
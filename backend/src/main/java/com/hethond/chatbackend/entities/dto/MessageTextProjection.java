@@ -0,0 +1,6 @@
+package com.hethond.chatbackend.entities.dto;
+
+/**
+ * The searchable part of a message, read in id order from the {@code MessageStore} to rebuild the search index.
+ */
+public record MessageTextProjection(long id, long channelId, String content) {}
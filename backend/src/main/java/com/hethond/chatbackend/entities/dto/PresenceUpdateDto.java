@@ -0,0 +1,32 @@
+package com.hethond.chatbackend.entities.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Members of a channel who came online or went offline since the channel's previous update,
+ * sent to its online members on {@code /user/topic/presence}.
+ */
+public class PresenceUpdateDto {
+    private final long channelId;
+    private final List<UUID> online;
+    private final List<UUID> offline;
+
+    public PresenceUpdateDto(long channelId, List<UUID> online, List<UUID> offline) {
+        this.channelId = channelId;
+        this.online = online;
+        this.offline = offline;
+    }
+
+    public long getChannelId() {
+        return channelId;
+    }
+
+    public List<UUID> getOnline() {
+        return online;
+    }
+
+    public List<UUID> getOffline() {
+        return offline;
+    }
+}
@@ -1,6 +1,10 @@
 package com.hethond.chatbackend.entities.dto;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.security.AuthenticatedUser;
 
 import java.util.UUID;
 
@@ -9,11 +13,20 @@ public class UserBasicDto {
         return new UserBasicDto(user.getId(), user.getPhone(), user.getUsername());
     }
 
+    public static UserBasicDto fromAuthenticatedUser(AuthenticatedUser user) {
+        return new UserBasicDto(user.id(), null, user.username());
+    }
+
     private final UUID id;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private final String phone;
     private final String username;
 
-    protected UserBasicDto(UUID id, String phone, String username) {
+    @JsonCreator
+    protected UserBasicDto(@JsonProperty("id") UUID id,
+                           @JsonProperty("phone") String phone,
+                           @JsonProperty("username") String username) {
         this.id = id;
         this.phone = phone;
         this.username = username;
@@ -2,6 +2,7 @@ package com.hethond.chatbackend.entities.dto;
 
 import com.hethond.chatbackend.entities.User;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -12,14 +13,25 @@ public class UserWithChannelsDto extends UserBasicDto {
                 user.getChannels().stream().map(ChannelBasicDto::fromChannel).collect(Collectors.toSet()));
     }
 
-    private final Set<ChannelBasicDto> channels;
+    /**
+     * Includes each channel's unread count and read marker; only for the user's own profile.
+     */
+    public static UserWithChannelsDto fromUser(User user, Map<Long, ChannelReadState> readStates) {
+        return new UserWithChannelsDto(user.getId(), user.getPhone(), user.getUsername(),
+                user.getChannels().stream()
+                        .map(channel -> ChannelWithUnreadDto.fromChannel(channel,
+                                readStates.getOrDefault(channel.getId(), ChannelReadState.NONE)))
+                        .collect(Collectors.toSet()));
+    }
+
+    private final Set<? extends ChannelBasicDto> channels;
 
-    protected UserWithChannelsDto(UUID id, String phone, String username, Set<ChannelBasicDto> channels) {
+    protected UserWithChannelsDto(UUID id, String phone, String username, Set<? extends ChannelBasicDto> channels) {
         super(id, phone, username);
         this.channels = channels;
     }
 
-    public Set<ChannelBasicDto> getChannels() {
+    public Set<? extends ChannelBasicDto> getChannels() {
         return channels;
     }
 }
@@ -0,0 +1,11 @@
+package com.hethond.chatbackend.exceptions;
+
+/**
+ * The provider refused the SMS for a reason that sending it again cannot fix, such as an invalid
+ * number or bad credentials.
+ */
+public class SmsRejectedException extends SmsSubmissionException {
+    public SmsRejectedException(String message) {
+        super(message);
+    }
+}
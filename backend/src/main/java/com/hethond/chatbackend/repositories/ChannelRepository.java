@@ -1,9 +1,22 @@
 package com.hethond.chatbackend.repositories;
 
 import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.dto.ChannelMemberProjection;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
 @Repository
 public interface ChannelRepository extends JpaRepository<Channel, Long> {
+    @Query("select m.id from Channel c join c.members m where c.id = :channelId")
+    List<UUID> findMemberIdsByChannelId(@Param("channelId") long channelId);
+
+    @Query("select new com.hethond.chatbackend.entities.dto.ChannelMemberProjection(c.id, m.id) "
+            + "from Channel c join c.members m where m.id in :memberIds")
+    List<ChannelMemberProjection> findMembershipsByMemberIdIn(@Param("memberIds") Collection<UUID> memberIds);
 }
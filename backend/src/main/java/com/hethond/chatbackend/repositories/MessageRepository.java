@@ -1,15 +1,69 @@
 package com.hethond.chatbackend.repositories;
 
 import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.dto.MessageProjection;
+import com.hethond.chatbackend.entities.dto.MessageTextProjection;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
+    String PROJECTION_QUERY = "select new com.hethond.chatbackend.entities.dto.MessageProjection("
+            + "m.id, m.content, a.id, a.username, c.id, c.name) "
+            + "from Message m join m.author a join m.channel c ";
+
     List<Message> findByChannelId(long channelId);
     Page<Message> findByChannelId(long channelId, Pageable pageable);
+
+    @Query(value = PROJECTION_QUERY + "where c.id = :channelId",
+            countQuery = "select count(m) from Message m where m.channel.id = :channelId")
+    Page<MessageProjection> findProjectionsByChannelId(@Param("channelId") long channelId, Pageable pageable);
+
+    // Keyset pages over the (channel_id, id) index; returning a Slice skips the count query.
+    @Query(PROJECTION_QUERY + "where c.id = :channelId and m.id < :id")
+    Slice<MessageProjection> findProjectionsByChannelIdAndIdLessThan(@Param("channelId") long channelId,
+                                                                     @Param("id") long id,
+                                                                     Pageable pageable);
+
+    @Query(PROJECTION_QUERY + "where c.id = :channelId and m.id > :id")
+    Slice<MessageProjection> findProjectionsByChannelIdAndIdGreaterThan(@Param("channelId") long channelId,
+                                                                        @Param("id") long id,
+                                                                        Pageable pageable);
+
+    @Query(PROJECTION_QUERY + "where c.id = :channelId and m.id in :ids")
+    List<MessageProjection> findProjectionsByChannelIdAndIdIn(@Param("channelId") long channelId,
+                                                              @Param("ids") Collection<Long> ids);
+
+    @Query("select new com.hethond.chatbackend.entities.dto.MessageTextProjection(m.id, m.channel.id, m.content) "
+            + "from Message m where m.id > :id")
+    Slice<MessageTextProjection> findTextsByIdGreaterThan(@Param("id") long id, Pageable pageable);
+
+    @Query(PROJECTION_QUERY + "where c.id = :channelId and m.id > :after and m.id < :before")
+    Slice<MessageProjection> findProjectionsByChannelIdAndIdBetween(@Param("channelId") long channelId,
+                                                                    @Param("after") long after,
+                                                                    @Param("before") long before,
+                                                                    Pageable pageable);
+
+    long countByChannelIdAndIdGreaterThan(long channelId, long id);
+
+    @Query("select count(m) from Message m where m.channel.id = :channelId and m.id > :after and m.id < :before")
+    long countByChannelIdAndIdBetween(@Param("channelId") long channelId,
+                                      @Param("after") long after,
+                                      @Param("before") long before);
+
+    @Query("select distinct m.channel.id from Message m where m.id < :id")
+    List<Long> findChannelIdsByIdLessThan(@Param("id") long id);
+
+    @Query("select m.id from Message m where m.channel.id = :channelId and m.id <= :id")
+    List<Long> findIdsByChannelIdAndIdLessThanEqual(@Param("channelId") long channelId,
+                                                    @Param("id") long id,
+                                                    Pageable pageable);
 }
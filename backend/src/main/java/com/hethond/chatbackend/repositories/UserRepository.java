@@ -1,7 +1,10 @@
 package com.hethond.chatbackend.repositories;
 
 import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.security.AuthenticatedUser;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -11,4 +14,8 @@ import java.util.UUID;
 public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByUsername(String username);
     Optional<User> findByPhone(String phone);
+
+    @Query("select new com.hethond.chatbackend.security.AuthenticatedUser(u.id, u.username, u.role, u.accountStatus) "
+            + "from User u where u.id = :id")
+    Optional<AuthenticatedUser> findAuthenticatedUserById(@Param("id") UUID id);
 }
@@ -16,7 +16,9 @@ public enum ResponseCode {
     FORBIDDEN(HttpStatus.FORBIDDEN),
     CONFLICT(HttpStatus.CONFLICT),
     NOT_FOUND(HttpStatus.NOT_FOUND),
-    VERIFICATION_FAILED(HttpStatus.BAD_REQUEST);
+    SERVICE_UNAVAILABLE(HttpStatus.SERVICE_UNAVAILABLE),
+    VERIFICATION_FAILED(HttpStatus.BAD_REQUEST),
+    BAD_REQUEST(HttpStatus.BAD_REQUEST);
 
     private final HttpStatus httpStatus;
 
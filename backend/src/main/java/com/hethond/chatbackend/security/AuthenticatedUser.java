@@ -0,0 +1,22 @@
+package com.hethond.chatbackend.security;
+
+import com.hethond.chatbackend.entities.AccountStatus;
+import com.hethond.chatbackend.entities.Role;
+
+import java.security.Principal;
+import java.util.UUID;
+
+/**
+ * The authenticated principal of an HTTP request or WebSocket session. It carries only what
+ * authorization needs, so resolving it never loads the {@code User} entity or its channels.
+ * Its name is the user id, which is also the key for user destinations.
+ */
+public record AuthenticatedUser(UUID id,
+                                String username,
+                                Role role,
+                                AccountStatus accountStatus) implements Principal {
+    @Override
+    public String getName() {
+        return id.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package com.hethond.chatbackend.security;
+
+import com.hethond.chatbackend.controllers.MessageController;
+import com.hethond.chatbackend.services.ChannelService;
+import com.hethond.chatbackend.services.MessageBroadcastService;
+import com.hethond.chatbackend.services.PresenceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Authorizes subscriptions to channel topics once, when the client subscribes,
+ * so that publishing to a channel topic needs no per-member checks.
+ * <p>
+ * The simple broker matches subscriptions as patterns, so only the destinations the server publishes
+ * to may be subscribed: a channel topic by number, or one of the user destinations. Clients may only
+ * send to application destinations; a frame sent to the broker would reach every subscriber as is.
+ */
+@Component
+public class ChannelSubscriptionInterceptor implements ChannelInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(ChannelSubscriptionInterceptor.class);
+
+    private static final String USER_DESTINATION_PREFIX = "/user";
+    private static final String APPLICATION_DESTINATION_PREFIX = "/app/";
+    private static final Set<String> USER_DESTINATIONS = Set.of(
+            USER_DESTINATION_PREFIX + MessageBroadcastService.USER_MESSAGES_DESTINATION,
+            USER_DESTINATION_PREFIX + MessageController.RECEIPTS_DESTINATION,
+            USER_DESTINATION_PREFIX + PresenceRegistry.PRESENCE_DESTINATION);
+
+    private final ChannelService channelService;
+
+    @Autowired
+    public ChannelSubscriptionInterceptor(final ChannelService channelService) {
+        this.channelService = channelService;
+    }
+
+    @Override
+    public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+        final StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null)
+            return message;
+
+        final String destination = accessor.getDestination();
+        if (accessor.getCommand() == StompCommand.SEND) {
+            if (destination == null || !destination.startsWith(APPLICATION_DESTINATION_PREFIX)) {
+                logger.warn("Rejected a frame sent to [{}] by user [{}].", destination, getUserName(accessor));
+                throw new AccessDeniedException("Access Denied");
+            }
+            return message;
+        }
+        if (accessor.getCommand() != StompCommand.SUBSCRIBE || (destination != null && USER_DESTINATIONS.contains(destination)))
+            return message;
+
+        final Principal user = accessor.getUser();
+        if (user == null || destination == null || !destination.startsWith(MessageBroadcastService.CHANNEL_TOPIC_PREFIX))
+            throw deny(destination, accessor);
+
+        final long channelId;
+        final UUID userId;
+        try {
+            final String channelIdText = destination.substring(MessageBroadcastService.CHANNEL_TOPIC_PREFIX.length());
+            // Digits only; a pattern such as "*" or "{id}" would match other channels' topics.
+            if (channelIdText.isEmpty() || !channelIdText.chars().allMatch(Character::isDigit))
+                throw deny(destination, accessor);
+            channelId = Long.parseLong(channelIdText);
+            userId = UUID.fromString(user.getName());
+        } catch (IllegalArgumentException e) {
+            throw new AccessDeniedException("Access Denied");
+        }
+
+        if (!channelService.isChannelMember(channelId, userId)) {
+            logger.warn("User [{}] attempted to subscribe to channel [{}] without being a member.", userId, channelId);
+            throw new AccessDeniedException("Access Denied");
+        }
+
+        return message;
+    }
+
+    private static AccessDeniedException deny(final String destination, final StompHeaderAccessor accessor) {
+        logger.warn("Rejected a subscription to [{}] by user [{}].", destination, getUserName(accessor));
+        return new AccessDeniedException("Access Denied");
+    }
+
+    private static String getUserName(final StompHeaderAccessor accessor) {
+        return accessor.getUser() != null ? accessor.getUser().getName() : null;
+    }
+}
@@ -1,6 +1,5 @@
 package com.hethond.chatbackend.security;
 
-import com.hethond.chatbackend.entities.User;
 import com.hethond.chatbackend.services.SessionService;
 import com.hethond.chatbackend.services.UserService;
 import org.slf4j.Logger;
@@ -40,10 +39,10 @@ public class HandshakeHandler extends HttpSessionHandshakeInterceptor {
         final String token = extractToken(request);
 
         final UUID userId = sessionService.getUserIdBySession(token);
-        final User authenticatedUser = userService.findUserById(userId);
+        final AuthenticatedUser authenticatedUser = userService.findAuthenticatedUserById(userId);
 
-        final Collection<GrantedAuthority> authorities = Collections.singletonList(authenticatedUser.getRole().getAuthority());
-        final var authentication = new UsernamePasswordAuthenticationToken(userId.toString(), null, authorities);
+        final Collection<GrantedAuthority> authorities = Collections.singletonList(authenticatedUser.role().getAuthority());
+        final var authentication = new UsernamePasswordAuthenticationToken(authenticatedUser, null, authorities);
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
         return super.beforeHandshake(request, response, wsHandler, attributes);
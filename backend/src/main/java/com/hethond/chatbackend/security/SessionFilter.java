@@ -1,10 +1,11 @@
 package com.hethond.chatbackend.security;
 
 import com.hethond.chatbackend.entities.AccountStatus;
-import com.hethond.chatbackend.entities.User;
 import com.hethond.chatbackend.exceptions.InactiveAccountException;
 import com.hethond.chatbackend.services.SessionService;
 import com.hethond.chatbackend.services.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -27,12 +28,24 @@ import java.util.UUID;
 public class SessionFilter extends OncePerRequestFilter {
     private final SessionService sessionService;
     private final UserService userService;
+    private final Timer lookupTimer;
+    private final Timer failedLookupTimer;
 
     @Autowired
     public SessionFilter(final SessionService sessionService,
-                         final UserService userService) {
+                         final UserService userService,
+                         final MeterRegistry meterRegistry) {
         this.sessionService = sessionService;
         this.userService = userService;
+        this.lookupTimer = lookupTimer("success", meterRegistry);
+        this.failedLookupTimer = lookupTimer("failure", meterRegistry);
+    }
+
+    private static Timer lookupTimer(final String outcome, final MeterRegistry meterRegistry) {
+        return Timer.builder("chat.session.lookup")
+                .description("Resolving a bearer token to its session and user")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
     @Override
@@ -45,17 +58,25 @@ public class SessionFilter extends OncePerRequestFilter {
             if (authHeader != null && authHeader.startsWith("Bearer ")) {
                 final String token = authHeader.substring(7);
 
-                final UUID userId = sessionService.getUserIdBySession(token);
-                final User authenticatedUser = userService.findUserById(userId);
+                final Timer.Sample lookup = Timer.start();
+                final AuthenticatedUser authenticatedUser;
+                try {
+                    final UUID userId = sessionService.getUserIdBySession(token);
+                    authenticatedUser = userService.findAuthenticatedUserById(userId);
+                    lookup.stop(lookupTimer);
+                } catch (RuntimeException e) {
+                    lookup.stop(failedLookupTimer);
+                    throw e;
+                }
 
-                if (authenticatedUser.getAccountStatus() == AccountStatus.BANNED) {
+                if (authenticatedUser.accountStatus() == AccountStatus.BANNED) {
                     // FIXME maybe i need to switch to response.sendError
                     throw new AccessDeniedException("Access Denied");
-                } else if (authenticatedUser.getAccountStatus() == AccountStatus.INACTIVE) {
-                    throw new InactiveAccountException("Your account is inactive.", authenticatedUser.getPhone());
+                } else if (authenticatedUser.accountStatus() == AccountStatus.INACTIVE) {
+                    throw new InactiveAccountException("Your account is inactive.");
                 }
 
-                final Collection<GrantedAuthority> authorities = Collections.singletonList(authenticatedUser.getRole().getAuthority());
+                final Collection<GrantedAuthority> authorities = Collections.singletonList(authenticatedUser.role().getAuthority());
                 final var authentication = new UsernamePasswordAuthenticationToken(authenticatedUser, null, authorities);
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             } else {
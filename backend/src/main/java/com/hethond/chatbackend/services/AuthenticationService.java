@@ -4,7 +4,6 @@ import com.hethond.chatbackend.entities.User;
 import com.hethond.chatbackend.exceptions.BadCredentialsException;
 import com.hethond.chatbackend.exceptions.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Service;
 
 import java.util.Base64;
@@ -13,12 +12,15 @@ import java.util.Base64;
 public class AuthenticationService {
     private final UserService userService;
     private final SessionService sessionService;
+    private final PasswordHashingService passwordHashingService;
 
     @Autowired
     public AuthenticationService(final UserService userService,
-                                 final SessionService sessionService) {
+                                 final SessionService sessionService,
+                                 final PasswordHashingService passwordHashingService) {
         this.userService = userService;
         this.sessionService = sessionService;
+        this.passwordHashingService = passwordHashingService;
     }
 
     public String authenticate(String username, String password) {
@@ -29,9 +31,15 @@ public class AuthenticationService {
             throw new BadCredentialsException("Incorrect username or password");
         }
 
-        if (!BCrypt.checkpw(password, selectedUser.getPasswordHash()))
+        if (!passwordHashingService.verify(password, selectedUser.getPasswordHash()))
             throw new BadCredentialsException("Incorrect username or password");
 
+        // Move the stored hash to the current work factor while the plain password is at hand.
+        if (passwordHashingService.needsRehash(selectedUser.getPasswordHash())) {
+            selectedUser.setPasswordHash(passwordHashingService.hash(password));
+            userService.saveUser(selectedUser);
+        }
+
         return sessionService.createSession(selectedUser.getId());
     }
 }
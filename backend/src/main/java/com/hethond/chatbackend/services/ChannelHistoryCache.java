@@ -0,0 +1,236 @@
+package com.hethond.chatbackend.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The newest messages of recently read channels, so opening a channel does not hit the database.
+ * <p>
+ * A channel's buffer is loaded when its newest page is requested and from then on receives every
+ * posted or relayed message. Buffers are bounded per channel by message count and together by an
+ * approximate heap size; channels that are not read are evicted first.
+ */
+@Service
+public class ChannelHistoryCache {
+    private static final Logger logger = LoggerFactory.getLogger(ChannelHistoryCache.class);
+
+    // Object headers and fields of a message, its author and its channel, excluding string contents.
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    private final MessageStore messageStore;
+    private final int capacity;
+    private final Cache<Long, ChannelBuffer> buffers;
+
+    @Autowired
+    public ChannelHistoryCache(final MessageStore messageStore,
+                               final MeterRegistry meterRegistry,
+                               final @Value("${app.channelHistorySize:200}") int capacity,
+                               final @Value("${app.channelHistoryMaxBytes:67108864}") long maxBytes) {
+        this.messageStore = messageStore;
+        this.capacity = capacity;
+        this.buffers = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long channelId, ChannelBuffer buffer) -> buffer.getWeight())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buffers, "channelHistoryCache");
+
+        logger.info("ChannelHistoryCache initialized with {} messages per channel and a limit of {} bytes.",
+                capacity, maxBytes);
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Up to {@code size} messages older than {@code before}, newest first, if the cached window covers them.
+     * A {@code null} cursor asks for the newest page and loads the channel's buffer when it is missing.
+     */
+    public Optional<Slice<MessageBasicDto>> findMessagesBefore(final long channelId, final Long before, final int size) {
+        if (!isEnabled() || size > capacity)
+            return Optional.empty();
+
+        ChannelBuffer buffer = buffers.getIfPresent(channelId);
+        if (buffer == null && before == null)
+            buffer = load(channelId);
+        return buffer == null
+                ? Optional.empty()
+                : Optional.ofNullable(buffer.findBefore(before != null ? before : Long.MAX_VALUE, size));
+    }
+
+    /**
+     * Up to {@code size} messages newer than {@code after}, oldest first, if the cached window covers them.
+     */
+    public Optional<Slice<MessageBasicDto>> findMessagesAfter(final long channelId, final long after, final int size) {
+        if (!isEnabled())
+            return Optional.empty();
+
+        final ChannelBuffer buffer = buffers.getIfPresent(channelId);
+        return buffer == null ? Optional.empty() : Optional.ofNullable(buffer.findAfter(after, size));
+    }
+
+    /**
+     * Adds a committed message to its channel's buffer, if the channel is cached.
+     */
+    public void append(final long channelId, final MessageBasicDto message) {
+        // compute re-weighs the buffer after it grew.
+        buffers.asMap().computeIfPresent(channelId, (id, buffer) -> {
+            buffer.add(message);
+            return buffer;
+        });
+    }
+
+    public boolean isCached(final long channelId) {
+        return buffers.getIfPresent(channelId) != null;
+    }
+
+    public void evict(final long channelId) {
+        buffers.invalidate(channelId);
+    }
+
+    private ChannelBuffer load(final long channelId) {
+        // The empty buffer is registered before querying, so messages posted during the query are not missed.
+        final ChannelBuffer buffer = buffers.get(channelId, id -> new ChannelBuffer(capacity));
+        if (buffer.isLoaded())
+            return buffer;
+        final Slice<MessageBasicDto> newest = messageStore.findBefore(channelId, Long.MAX_VALUE, capacity);
+
+        // A buffer replaced during the query may have missed messages committed before it was registered.
+        final ChannelBuffer loaded = buffers.asMap().computeIfPresent(channelId, (id, current) -> {
+            if (current == buffer)
+                current.load(newest.getContent(), !newest.hasNext());
+            return current;
+        });
+        logger.debug("Loaded {} messages of channel [{}] into the history cache.", newest.getNumberOfElements(), channelId);
+        return loaded;
+    }
+
+    private static int estimateBytes(final MessageBasicDto message) {
+        return ENTRY_OVERHEAD_BYTES + 2 * (length(message.getContent())
+                + length(message.getAuthor().getUsername())
+                + length(message.getChannel().getName()));
+    }
+
+    private static int length(final String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * Ring buffer of a channel's newest messages, ordered by id. It holds every message of the
+     * channel from its oldest entry on, and all of them when {@code reachesStart} is set.
+     */
+    private static final class ChannelBuffer {
+        private final MessageBasicDto[] ring;
+        private int head;
+        private int size;
+        private int weight;
+        private boolean loaded;
+        private boolean reachesStart;
+
+        private ChannelBuffer(final int capacity) {
+            this.ring = new MessageBasicDto[capacity];
+            // The buffer object and its array of references.
+            this.weight = 64 + 4 * capacity;
+        }
+
+        private synchronized boolean isLoaded() {
+            return loaded;
+        }
+
+        private synchronized int getWeight() {
+            return weight;
+        }
+
+        private synchronized void load(final List<MessageBasicDto> newestFirst, final boolean complete) {
+            reachesStart = complete;
+            for (MessageBasicDto message : newestFirst.reversed())
+                add(message);
+            loaded = true;
+        }
+
+        private synchronized void add(final MessageBasicDto message) {
+            final long id = message.getId();
+            // Messages nearly always arrive in id order; walk back past the few that were posted concurrently.
+            int position = size;
+            while (position > 0 && get(position - 1).getId() > id)
+                position--;
+            if (position > 0 && get(position - 1).getId() == id)
+                return;
+
+            if (size == ring.length) {
+                if (position == 0) {
+                    // Older than everything in a full buffer.
+                    reachesStart = false;
+                    return;
+                }
+                weight -= estimateBytes(get(0));
+                ring[head] = null;
+                head = index(1);
+                size--;
+                position--;
+                reachesStart = false;
+            }
+            for (int i = size; i > position; i--)
+                ring[index(i)] = ring[index(i - 1)];
+            ring[index(position)] = message;
+            size++;
+            weight += estimateBytes(message);
+        }
+
+        private synchronized Slice<MessageBasicDto> findBefore(final long before, final int limit) {
+            if (!loaded)
+                return null;
+
+            int position = size;
+            while (position > 0 && get(position - 1).getId() >= before)
+                position--;
+
+            final List<MessageBasicDto> messages = new ArrayList<>(Math.min(limit, position));
+            while (position > 0 && messages.size() < limit)
+                messages.add(get(--position));
+
+            final boolean hasOlder = position > 0 || !reachesStart;
+            if (messages.size() < limit && hasOlder)
+                return null;
+            return new SliceImpl<>(messages, PageRequest.of(0, limit), hasOlder);
+        }
+
+        private synchronized Slice<MessageBasicDto> findAfter(final long after, final int limit) {
+            if (!loaded || size == 0 || (!reachesStart && after < get(0).getId()))
+                return null;
+
+            int position = 0;
+            while (position < size && get(position).getId() <= after)
+                position++;
+
+            final List<MessageBasicDto> messages = new ArrayList<>(Math.min(limit, size - position));
+            while (position < size && messages.size() < limit)
+                messages.add(get(position++));
+            return new SliceImpl<>(messages, PageRequest.of(0, limit), position < size);
+        }
+
+        private MessageBasicDto get(final int position) {
+            return ring[index(position)];
+        }
+
+        private int index(final int position) {
+            return (head + position) % ring.length;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.hethond.chatbackend.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hethond.chatbackend.repositories.ChannelRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Channel id to member ids, loaded lazily per channel and kept in sync by {@link ChannelService}.
+ * Member sets are immutable and replaced on change, so readers never lock and a snapshot can be
+ * handed to another thread as-is. Other nodes drop their copy of a changed channel and reload it.
+ * The number of channels held is bounded; rarely read channels are dropped first. An id without
+ * a channel has no members and is not held, so unknown ids cannot fill the index.
+ */
+@Service
+public class ChannelMembershipIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ChannelMembershipIndex.class);
+    private static final String INVALIDATION_CHANNEL = "membership:invalidations";
+
+    private final ChannelRepository channelRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final String instanceId;
+    private final Cache<Long, MemberIdSet> members;
+
+    @Autowired
+    public ChannelMembershipIndex(final ChannelRepository channelRepository,
+                                  final StringRedisTemplate redisTemplate,
+                                  final RedisMessageListenerContainer listenerContainer,
+                                  final MeterRegistry meterRegistry,
+                                  final NodeInstance nodeInstance,
+                                  final @Value("${app.membershipIndexMaxChannels:10000}") long maxChannels) {
+        this.channelRepository = channelRepository;
+        this.redisTemplate = redisTemplate;
+        this.instanceId = nodeInstance.getId().toString();
+        this.members = Caffeine.newBuilder()
+                .maximumSize(maxChannels)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, members, "channelMembershipIndex");
+
+        // Messages are "<instanceId>:<channelId>"; changes made on this node are already applied.
+        listenerContainer.addMessageListener((message, pattern) -> {
+            final String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            final int separator = body.indexOf(':');
+            if (!body.substring(0, separator).equals(this.instanceId))
+                evict(Long.parseLong(body.substring(separator + 1)));
+        }, new ChannelTopic(INVALIDATION_CHANNEL));
+
+        logger.info("ChannelMembershipIndex initialized with a limit of {} channels.", maxChannels);
+    }
+
+    public boolean isMember(final long channelId, final UUID userId) {
+        return getMembers(channelId).contains(userId);
+    }
+
+    public MemberIdSet getMembers(final long channelId) {
+        // Loading inside the cache makes concurrent add/remove calls for the channel wait for the load.
+        final MemberIdSet set = members.get(channelId, this::load);
+        return set != null ? set : MemberIdSet.EMPTY;
+    }
+
+    public void addMember(final long channelId, final UUID userId) {
+        members.asMap().computeIfPresent(channelId, (id, set) -> set.with(userId));
+        publishChange(channelId);
+    }
+
+    public void removeMember(final long channelId, final UUID userId) {
+        members.asMap().computeIfPresent(channelId, (id, set) -> set.without(userId));
+        publishChange(channelId);
+    }
+
+    public void evict(final long channelId) {
+        members.invalidate(channelId);
+    }
+
+    private void publishChange(final long channelId) {
+        redisTemplate.convertAndSend(INVALIDATION_CHANNEL, instanceId + ":" + channelId);
+    }
+
+    // Null, and so not cached, for an id without a channel.
+    private MemberIdSet load(final long channelId) {
+        final List<UUID> memberIds = channelRepository.findMemberIdsByChannelId(channelId);
+        if (memberIds.isEmpty() && !channelRepository.existsById(channelId))
+            return null;
+        final MemberIdSet set = MemberIdSet.of(memberIds);
+        logger.debug("Loaded {} members of channel [{}] into the membership index.", set.size(), channelId);
+        return set;
+    }
+
+    /**
+     * Immutable open-addressing hash set of UUIDs, stored as pairs of longs
+     * (16 bytes per slot at a load factor of at most 0.75).
+     */
+    public static final class MemberIdSet {
+        private static final MemberIdSet EMPTY = new MemberIdSet(new long[2], 0);
+
+        // slots[2 * i] and slots[2 * i + 1] hold the most and least significant bits; 0/0 marks an empty slot.
+        private final long[] slots;
+        private final int size;
+
+        private MemberIdSet(final long[] slots, final int size) {
+            this.slots = slots;
+            this.size = size;
+        }
+
+        public static MemberIdSet of(final Collection<UUID> ids) {
+            if (ids.isEmpty())
+                return EMPTY;
+            final long[] slots = new long[2 * capacityFor(ids.size())];
+            int size = 0;
+            for (UUID id : ids) {
+                if (insert(slots, id.getMostSignificantBits(), id.getLeastSignificantBits()))
+                    size++;
+            }
+            return new MemberIdSet(slots, size);
+        }
+
+        public boolean contains(final UUID id) {
+            final long msb = id.getMostSignificantBits();
+            final long lsb = id.getLeastSignificantBits();
+            final int mask = slots.length / 2 - 1;
+            for (int i = hash(msb, lsb) & mask; ; i = (i + 1) & mask) {
+                final long slotMsb = slots[2 * i];
+                final long slotLsb = slots[2 * i + 1];
+                if (slotMsb == msb && slotLsb == lsb)
+                    return msb != 0 || lsb != 0;
+                if (slotMsb == 0 && slotLsb == 0)
+                    return false;
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void forEach(final Consumer<UUID> action) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (slots[i] != 0 || slots[i + 1] != 0)
+                    action.accept(new UUID(slots[i], slots[i + 1]));
+            }
+        }
+
+        MemberIdSet with(final UUID id) {
+            if (contains(id))
+                return this;
+            final int capacity = capacityFor(size + 1);
+            final long[] newSlots;
+            if (capacity == slots.length / 2) {
+                newSlots = slots.clone();
+            } else {
+                newSlots = new long[2 * capacity];
+                for (int i = 0; i < slots.length; i += 2) {
+                    if (slots[i] != 0 || slots[i + 1] != 0)
+                        insert(newSlots, slots[i], slots[i + 1]);
+                }
+            }
+            insert(newSlots, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            return new MemberIdSet(newSlots, size + 1);
+        }
+
+        MemberIdSet without(final UUID id) {
+            if (!contains(id))
+                return this;
+            if (size == 1)
+                return EMPTY;
+            final long msb = id.getMostSignificantBits();
+            final long lsb = id.getLeastSignificantBits();
+            final long[] newSlots = new long[2 * capacityFor(size - 1)];
+            for (int i = 0; i < slots.length; i += 2) {
+                if ((slots[i] != 0 || slots[i + 1] != 0) && (slots[i] != msb || slots[i + 1] != lsb))
+                    insert(newSlots, slots[i], slots[i + 1]);
+            }
+            return new MemberIdSet(newSlots, size - 1);
+        }
+
+        private static boolean insert(final long[] slots, final long msb, final long lsb) {
+            if (msb == 0 && lsb == 0)
+                return false;
+            final int mask = slots.length / 2 - 1;
+            for (int i = hash(msb, lsb) & mask; ; i = (i + 1) & mask) {
+                if (slots[2 * i] == msb && slots[2 * i + 1] == lsb)
+                    return false;
+                if (slots[2 * i] == 0 && slots[2 * i + 1] == 0) {
+                    slots[2 * i] = msb;
+                    slots[2 * i + 1] = lsb;
+                    return true;
+                }
+            }
+        }
+
+        private static int capacityFor(final int size) {
+            return Math.max(2, Integer.highestOneBit(Math.max(1, size * 4 / 3)) << 1);
+        }
+
+        private static int hash(final long msb, final long lsb) {
+            long h = msb ^ Long.rotateLeft(lsb, 32);
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return (int) h;
+        }
+    }
+}
@@ -7,6 +7,8 @@ import com.hethond.chatbackend.repositories.ChannelRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -15,11 +17,15 @@ import java.util.UUID;
 public class ChannelService {
     private final ChannelRepository channelRepository;
     private final UserService userService;
+    private final ChannelMembershipIndex channelMembershipIndex;
 
     @Autowired
-    public ChannelService(ChannelRepository channelRepository, UserService userService) {
+    public ChannelService(ChannelRepository channelRepository,
+                          UserService userService,
+                          ChannelMembershipIndex channelMembershipIndex) {
         this.channelRepository = channelRepository;
         this.userService = userService;
+        this.channelMembershipIndex = channelMembershipIndex;
     }
 
     public Channel findChannelById(long id) {
@@ -27,6 +33,10 @@ public class ChannelService {
         return channel.orElseThrow(() -> ApiException.notFound("Channel not found"));
     }
 
+    public boolean isChannelMember(long channelId, UUID userId) {
+        return channelMembershipIndex.isMember(channelId, userId);
+    }
+
     @Transactional
     public Channel saveChannel(Channel channel) {
         return channelRepository.save(channel);
@@ -37,7 +47,9 @@ public class ChannelService {
         Channel channel = findChannelById(channelId);
         User user = userService.findUserById(userId);
         channel.addMember(user);
-        return channelRepository.save(channel);
+        Channel savedChannel = channelRepository.save(channel);
+        afterCommit(() -> channelMembershipIndex.addMember(channelId, userId));
+        return savedChannel;
     }
 
     @Transactional
@@ -45,6 +57,21 @@ public class ChannelService {
         Channel channel = findChannelById(channelId);
         User user = userService.findUserById(userId);
         channel.removeMember(user);
-        return channelRepository.save(channel);
+        Channel savedChannel = channelRepository.save(channel);
+        afterCommit(() -> channelMembershipIndex.removeMember(channelId, userId));
+        return savedChannel;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
@@ -0,0 +1,158 @@
+package com.hethond.chatbackend.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs message fan-out off the request thread. Channels are hashed onto a fixed
+ * set of single-threaded partitions, so deliveries within a channel keep their
+ * order while different channels are delivered in parallel.
+ * <p>
+ * A task that finds its partition full waits a bounded time for room, or none at all when queued from
+ * a thread that must not stall, and is then dropped: its message is stored, but not delivered live.
+ */
+@Service
+public class FanOutDispatcher implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(FanOutDispatcher.class);
+
+    private final Partition[] partitions;
+    private final long queueTimeoutNanos;
+
+    @Autowired
+    public FanOutDispatcher(final @Value("${app.fanOutPartitions:0}") int partitionCount,
+                            final @Value("${app.fanOutQueueCapacity:10000}") int queueCapacity,
+                            final @Value("${app.fanOutQueueTimeoutMillis:100}") long queueTimeoutMillis,
+                            final MeterRegistry meterRegistry) {
+        final int count = partitionCount > 0 ? partitionCount : Runtime.getRuntime().availableProcessors();
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("fanout-");
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(i, queueCapacity, threadFactory, meterRegistry);
+        }
+
+        logger.info("FanOutDispatcher initialized with {} partitions and a queue capacity of {} per partition.", count, queueCapacity);
+    }
+
+    /**
+     * Queues a fan-out task for the given channel. Waits up to {@code app.fanOutQueueTimeoutMillis}
+     * when the channel's partition is full, then drops the task.
+     *
+     * @return whether the task was queued
+     */
+    public boolean dispatch(final long channelId, final Runnable task) {
+        return partitions[getPartitionIndex(channelId)].submit(channelId, task, queueTimeoutNanos);
+    }
+
+    /**
+     * Queues a fan-out task for the given channel, dropping it at once if the partition is full.
+     * For threads that serve other work, such as the Redis listener.
+     *
+     * @return whether the task was queued
+     */
+    public boolean tryDispatch(final long channelId, final Runnable task) {
+        return partitions[getPartitionIndex(channelId)].submit(channelId, task, 0);
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    private int getPartitionIndex(final long channelId) {
+        return Math.floorMod(Long.hashCode(channelId), partitions.length);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (Partition partition : partitions) {
+            partition.executor.shutdown();
+        }
+        for (Partition partition : partitions) {
+            if (!partition.executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Fan-out partition {} did not drain in time; {} tasks dropped.",
+                        partition.index, partition.executor.shutdownNow().size());
+            }
+        }
+    }
+
+    private static final class Partition {
+        private final int index;
+        private final ThreadPoolExecutor executor;
+        private final Timer lagTimer;
+        private final Counter rejectedCounter;
+
+        private Partition(final int index,
+                          final int queueCapacity,
+                          final CustomizableThreadFactory threadFactory,
+                          final MeterRegistry meterRegistry) {
+            this.index = index;
+            // A full queue rejects rather than running the task on the caller, which would break ordering.
+            this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+
+            final String partitionTag = String.valueOf(index);
+            final BlockingQueue<Runnable> queue = executor.getQueue();
+            Gauge.builder("chat.fanout.queue.depth", queue, BlockingQueue::size)
+                    .description("Fan-out tasks waiting in a partition")
+                    .tag("partition", partitionTag)
+                    .register(meterRegistry);
+            this.lagTimer = Timer.builder("chat.fanout.lag")
+                    .description("Time a fan-out task waited in its partition before running")
+                    .tag("partition", partitionTag)
+                    .register(meterRegistry);
+            this.rejectedCounter = Counter.builder("chat.fanout.rejected")
+                    .description("Fan-out tasks dropped because their partition stayed full or was shut down")
+                    .tag("partition", partitionTag)
+                    .register(meterRegistry);
+        }
+
+        private boolean submit(final long channelId, final Runnable task, final long timeoutNanos) {
+            final long enqueuedAt = System.nanoTime();
+            final Runnable timedTask = () -> {
+                lagTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Fan-out for channel [{}] failed on partition {}.", channelId, index, e);
+                }
+            };
+
+            try {
+                executor.execute(timedTask);
+                return true;
+            } catch (RejectedExecutionException e) {
+                // Full or shut down; only a full queue is worth waiting for.
+            }
+            try {
+                if (timeoutNanos > 0 && !executor.isShutdown()
+                        && executor.getQueue().offer(timedTask, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    // The worker may have exited before the task was queued, the same recheck execute() makes.
+                    if (!executor.isShutdown() || !executor.remove(timedTask))
+                        return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            rejectedCounter.increment();
+            logger.warn("Fan-out partition {} is {}; dropped a task for channel [{}].",
+                    index, executor.isShutdown() ? "shut down" : "full", channelId);
+            return false;
+        }
+    }
+}
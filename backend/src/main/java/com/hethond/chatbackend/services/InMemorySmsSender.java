@@ -0,0 +1,56 @@
+package com.hethond.chatbackend.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in sender for running offline and under load: keeps the most recent messages in memory
+ * instead of contacting a provider, optionally after a simulated provider latency.
+ */
+@Service
+@ConditionalOnProperty(name = "app.smsSender", havingValue = "stub")
+public class InMemorySmsSender implements SmsSender {
+    private static final Logger logger = LoggerFactory.getLogger(InMemorySmsSender.class);
+    private static final int RETAINED_MESSAGES = 1000;
+
+    public record SentSms(String author, String recipient, String content) {}
+
+    private final long latencyMillis;
+    private final ConcurrentLinkedDeque<SentSms> sentMessages = new ConcurrentLinkedDeque<>();
+
+    @Autowired
+    public InMemorySmsSender(final @Value("${app.smsStubLatencyMillis:0}") long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+
+        logger.info("InMemorySmsSender initialized with a simulated latency of {} ms; no SMS will be delivered.", latencyMillis);
+    }
+
+    @Override
+    public void send(final String author, final String recipient, final String content) {
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        sentMessages.addLast(new SentSms(author, recipient, content));
+        while (sentMessages.size() > RETAINED_MESSAGES) {
+            sentMessages.pollFirst();
+        }
+        logger.debug("Stored SMS from {} to {}", author, recipient);
+    }
+
+    public List<SentSms> getSentMessages() {
+        return List.copyOf(sentMessages);
+    }
+}
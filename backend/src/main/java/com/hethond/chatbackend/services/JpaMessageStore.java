@@ -0,0 +1,222 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.entities.dto.MessageProjection;
+import com.hethond.chatbackend.entities.dto.MessageTextProjection;
+import com.hethond.chatbackend.repositories.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Messages as rows of the messages table, optionally inserted in batches by {@link MessageBatchWriter}.
+ * Once {@link MessageArchive} has moved a channel's old messages out of the table, reads combine
+ * the archive up to its last id with the rows above it.
+ */
+@Service
+@ConditionalOnProperty(name = "app.messageStore", havingValue = "jpa", matchIfMissing = true)
+public class JpaMessageStore implements MessageStore {
+    private static final Logger logger = LoggerFactory.getLogger(JpaMessageStore.class);
+
+    private static final int SCAN_BATCH_SIZE = 10_000;
+
+    private final MessageRepository messageRepository;
+    private final MessageBatchWriter messageBatchWriter;
+    private final MessageIdGenerator messageIdGenerator;
+    private final MessageArchive messageArchive;
+
+    @Autowired
+    public JpaMessageStore(final MessageRepository messageRepository,
+                           final MessageBatchWriter messageBatchWriter,
+                           final MessageIdGenerator messageIdGenerator,
+                           final MessageArchive messageArchive) {
+        this.messageRepository = messageRepository;
+        this.messageBatchWriter = messageBatchWriter;
+        this.messageIdGenerator = messageIdGenerator;
+        this.messageArchive = messageArchive;
+
+        logger.info("JpaMessageStore initialized; messages are stored in the database.");
+    }
+
+    @Override
+    public Message save(final Message message) {
+        assignId(message);
+        if (!messageBatchWriter.isEnabled())
+            return messageRepository.save(message);
+
+        try {
+            return messageBatchWriter.submit(message).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * With write-behind enabled the message is committed together with other queued messages.
+     */
+    @Override
+    public CompletableFuture<Message> saveAsync(final Message message) {
+        assignId(message);
+        if (!messageBatchWriter.isEnabled())
+            return CompletableFuture.completedFuture(messageRepository.save(message));
+        return messageBatchWriter.submit(message);
+    }
+
+    @Override
+    public boolean isWriteBehind() {
+        return messageBatchWriter.isEnabled();
+    }
+
+    private void assignId(final Message message) {
+        if (message.getId() == 0)
+            message.setId(messageIdGenerator.nextId());
+    }
+
+    /**
+     * Archived messages are only included when sorting by id; other sorts page through the table.
+     */
+    @Override
+    public Page<MessageBasicDto> findByChannelId(final long channelId, final Pageable pageable) {
+        final long archivedUpTo = messageArchive.getArchivedUpTo(channelId);
+        final boolean sortedById = pageable.getSort().stream().allMatch(order -> order.getProperty().equals("id"));
+        if (archivedUpTo == Long.MIN_VALUE || !sortedById)
+            return messageRepository.findProjectionsByChannelId(channelId, pageable)
+                    .map(MessageBasicDto::fromProjection);
+
+        final Sort.Order idOrder = pageable.getSort().getOrderFor("id");
+        final boolean descending = idOrder != null && idOrder.isDescending();
+        final int archived = messageArchive.count(channelId);
+        final int live = (int) messageRepository.countByChannelIdAndIdGreaterThan(channelId, archivedUpTo);
+        final int total = archived + live;
+        final int offset = (int) Math.min(pageable.getOffset(), total);
+        final int end = Math.min(offset + pageable.getPageSize(), total);
+
+        // Positions in ascending id order: the archive comes first, then the table.
+        final int start = descending ? total - end : offset;
+        final int stop = descending ? total - offset : end;
+        final List<MessageBasicDto> messages = new ArrayList<>(stop - start);
+        if (start < archived)
+            messages.addAll(messageArchive.read(channelId, start, Math.min(stop, archived)));
+        if (stop > Math.max(start, archived))
+            messages.addAll(readTable(channelId, archivedUpTo, Math.max(start, archived) - archived, stop - archived));
+        return new PageImpl<>(descending ? messages.reversed() : messages, pageable, total);
+    }
+
+    // Rows [start, end) of the channel above the archive in ascending id order, read as aligned pages.
+    private List<MessageBasicDto> readTable(final long channelId, final long archivedUpTo, final int start, final int end) {
+        final int pageSize = end - start;
+        final List<MessageProjection> rows = new ArrayList<>(2 * pageSize);
+        for (int page = start / pageSize; page * pageSize < end; page++) {
+            final Slice<MessageProjection> slice = messageRepository.findProjectionsByChannelIdAndIdBetween(channelId,
+                    archivedUpTo, Long.MAX_VALUE, PageRequest.of(page, pageSize, Sort.by(Sort.Direction.ASC, "id")));
+            rows.addAll(slice.getContent());
+            if (!slice.hasNext())
+                break;
+        }
+        final int skipped = start - start / pageSize * pageSize;
+        return rows.subList(Math.min(skipped, rows.size()), Math.min(skipped + pageSize, rows.size())).stream()
+                .map(MessageBasicDto::fromProjection)
+                .toList();
+    }
+
+    @Override
+    public Slice<MessageBasicDto> findBefore(final long channelId, final long before, final int size) {
+        final long archivedUpTo = messageArchive.getArchivedUpTo(channelId);
+        if (archivedUpTo == Long.MIN_VALUE)
+            return messageRepository.findProjectionsByChannelIdAndIdLessThan(channelId, before,
+                            PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, "id")))
+                    .map(MessageBasicDto::fromProjection);
+
+        final List<MessageBasicDto> messages = new ArrayList<>(size);
+        if (before > archivedUpTo + 1) {
+            final Slice<MessageProjection> rows = messageRepository.findProjectionsByChannelIdAndIdBetween(channelId,
+                    archivedUpTo, before, PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, "id")));
+            rows.forEach(row -> messages.add(MessageBasicDto.fromProjection(row)));
+            if (messages.size() == size)
+                return new SliceImpl<>(messages, PageRequest.of(0, size),
+                        rows.hasNext() || messageArchive.count(channelId) > 0);
+        }
+
+        final int end = messageArchive.countBelow(channelId, before);
+        final int start = Math.max(0, end - (size - messages.size()));
+        messages.addAll(messageArchive.read(channelId, start, end).reversed());
+        return new SliceImpl<>(messages, PageRequest.of(0, size), start > 0);
+    }
+
+    @Override
+    public Slice<MessageBasicDto> findAfter(final long channelId, final long after, final int size) {
+        final long archivedUpTo = messageArchive.getArchivedUpTo(channelId);
+        if (after >= archivedUpTo)
+            return messageRepository.findProjectionsByChannelIdAndIdGreaterThan(channelId, after,
+                            PageRequest.of(0, size, Sort.by(Sort.Direction.ASC, "id")))
+                    .map(MessageBasicDto::fromProjection);
+
+        final int archived = messageArchive.count(channelId);
+        final int start = messageArchive.countBelow(channelId, after + 1);
+        final List<MessageBasicDto> messages = new ArrayList<>(messageArchive.read(channelId, start,
+                (int) Math.min(archived, (long) start + size)));
+        if (messages.size() == size)
+            return new SliceImpl<>(messages, PageRequest.of(0, size), start + size < archived
+                    || messageRepository.countByChannelIdAndIdGreaterThan(channelId, archivedUpTo) > 0);
+
+        final Slice<MessageProjection> rows = messageRepository.findProjectionsByChannelIdAndIdGreaterThan(channelId,
+                archivedUpTo, PageRequest.of(0, size - messages.size(), Sort.by(Sort.Direction.ASC, "id")));
+        rows.forEach(row -> messages.add(MessageBasicDto.fromProjection(row)));
+        return new SliceImpl<>(messages, PageRequest.of(0, size), rows.hasNext());
+    }
+
+    @Override
+    public List<MessageBasicDto> findByIds(final long channelId, final Collection<Long> ids) {
+        final long archivedUpTo = messageArchive.getArchivedUpTo(channelId);
+        final List<Long> archivedIds = ids.stream().filter(id -> id <= archivedUpTo).toList();
+        final List<MessageBasicDto> messages = new ArrayList<>(ids.size());
+        if (archivedIds.size() < ids.size()) {
+            messageRepository.findProjectionsByChannelIdAndIdIn(channelId, ids).stream()
+                    .filter(row -> row.id() > archivedUpTo)
+                    .forEach(row -> messages.add(MessageBasicDto.fromProjection(row)));
+        }
+        if (!archivedIds.isEmpty())
+            messages.addAll(messageArchive.findByIds(channelId, archivedIds));
+        return messages;
+    }
+
+    /**
+     * Reads the archive, then the table in keyset pages over the primary key, so neither is held in memory at once.
+     */
+    @Override
+    public void forEachText(final Consumer<MessageTextProjection> action) {
+        messageArchive.forEachText(action);
+        long cursor = Long.MIN_VALUE;
+        Slice<MessageTextProjection> batch;
+        do {
+            batch = messageRepository.findTextsByIdGreaterThan(cursor,
+                    PageRequest.of(0, SCAN_BATCH_SIZE, Sort.by(Sort.Direction.ASC, "id")));
+            for (MessageTextProjection message : batch) {
+                // Rows the archiver has copied but not yet deleted.
+                if (message.id() > messageArchive.getArchivedUpTo(message.channelId()))
+                    action.accept(message);
+            }
+            if (batch.hasContent())
+                cursor = batch.getContent().getLast().id();
+        } while (batch.hasNext());
+    }
+}
@@ -0,0 +1,631 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.entities.dto.MessageProjection;
+import com.hethond.chatbackend.entities.dto.MessageTextProjection;
+import com.hethond.chatbackend.repositories.ChannelRepository;
+import com.hethond.chatbackend.repositories.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed per-channel files for messages older than {@code app.messageArchiveAfterDays}, so the
+ * messages table and its indexes stop growing with the channel's history.
+ * <p>
+ * A background task moves each channel's old messages into a new segment per run. A segment holds
+ * records in id order, deflated in blocks of about 64 KB and followed by an index of the blocks'
+ * first ids and offsets, so a read inflates only the blocks it needs. {@link JpaMessageStore} reads
+ * a channel's messages up to {@link #getArchivedUpTo} from here and newer ones from the table.
+ * Archived rows are deleted from the table in the following run, so a node that lists the
+ * directory only every 30 seconds still finds every message in one of the two places.
+ * <p>
+ * A segment that cannot be opened is logged and skipped, and one whose file is gone is dropped at
+ * the next listing, so the channel's newer messages stay readable; rows it covered that are still
+ * in the table are read from there, and the next run archives them again over the broken file.
+ * <p>
+ * With several nodes, put the directory on a shared volume and run the archiver on one node only.
+ */
+@Service
+public class MessageArchive implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchive.class);
+
+    private static final String SEGMENT_SUFFIX = ".archive";
+    private static final String TEMPORARY_FILE = "segment.tmp";
+    private static final int MAGIC = 0x43484131;
+    // Index offset, block count and magic.
+    private static final int FOOTER_BYTES = 16;
+    // First id, offset, compressed length, uncompressed length and record count of a block.
+    private static final int INDEX_ENTRY_BYTES = 32;
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final int READ_BATCH_SIZE = 10_000;
+    private static final int DELETE_BATCH_SIZE = 1_000;
+    private static final long LISTING_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final MessageRepository messageRepository;
+    private final ChannelRepository channelRepository;
+    private final boolean enabled;
+    private final Path directory;
+    private final Duration archiveAfter;
+    private final long minMessages;
+    private final ScheduledExecutorService archiveScheduler;
+    private final ConcurrentHashMap<Long, ChannelArchive> channels = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MessageArchive(final MessageRepository messageRepository,
+                          final ChannelRepository channelRepository,
+                          final @Value("${app.messageArchiveEnabled:false}") boolean enabled,
+                          final @Value("${app.messageArchiveDirectory:data/archive}") Path directory,
+                          final @Value("${app.messageArchiveAfterDays:90}") long archiveAfterDays,
+                          final @Value("${app.messageArchiveMinMessages:1000}") long minMessages,
+                          final @Value("${app.messageArchiveIntervalMinutes:60}") long intervalMinutes)
+            throws IOException {
+        this.messageRepository = messageRepository;
+        this.channelRepository = channelRepository;
+        this.enabled = enabled;
+        this.directory = enabled ? Files.createDirectories(directory) : directory;
+        this.archiveAfter = Duration.ofDays(archiveAfterDays);
+        this.minMessages = minMessages;
+
+        if (enabled && intervalMinutes > 0) {
+            archiveScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("message-archiver-"));
+            archiveScheduler.scheduleWithFixedDelay(this::archive, 1, intervalMinutes, TimeUnit.MINUTES);
+        } else {
+            archiveScheduler = null;
+        }
+
+        if (enabled)
+            logger.info("MessageArchive initialized in {}; messages older than {} days are archived {}.",
+                    directory.toAbsolutePath(), archiveAfterDays,
+                    archiveScheduler != null ? "every " + intervalMinutes + " minutes" : "by another node");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The highest archived id of the channel, or {@link Long#MIN_VALUE} when nothing is archived.
+     * Messages up to this id are read from the archive, even if their rows still exist.
+     */
+    public long getArchivedUpTo(final long channelId) {
+        return enabled ? getChannel(channelId).getArchivedUpTo() : Long.MIN_VALUE;
+    }
+
+    public int count(final long channelId) {
+        return getChannel(channelId).count();
+    }
+
+    /**
+     * The number of archived messages with an id below {@code id}.
+     */
+    public int countBelow(final long channelId, final long id) {
+        return getChannel(channelId).countBelow(id);
+    }
+
+    /**
+     * Archived messages by position, oldest first.
+     */
+    public List<MessageBasicDto> read(final long channelId, final int start, final int end) {
+        return getChannel(channelId).read(start, end);
+    }
+
+    public List<MessageBasicDto> findByIds(final long channelId, final Collection<Long> ids) {
+        return getChannel(channelId).findByIds(ids);
+    }
+
+    /**
+     * Passes every archived message to {@code action}, in id order within each channel.
+     */
+    public void forEachText(final Consumer<MessageTextProjection> action) {
+        if (!enabled)
+            return;
+        for (long channelId : listChannelIds())
+            getChannel(channelId).forEachText(action);
+    }
+
+    private ChannelArchive getChannel(final long channelId) {
+        return channels.computeIfAbsent(channelId, id -> new ChannelArchive(id, directory.resolve(String.valueOf(id))));
+    }
+
+    private List<Long> listChannelIds() {
+        try (Stream<Path> channelDirectories = Files.list(directory)) {
+            return channelDirectories
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + directory + ".", e);
+        }
+    }
+
+    void archive() {
+        final long cutoffId = MessageIdGenerator.getMinIdAt(System.currentTimeMillis() - archiveAfter.toMillis());
+        final List<Long> channelIds;
+        try {
+            channelIds = messageRepository.findChannelIdsByIdLessThan(cutoffId);
+        } catch (RuntimeException e) {
+            logger.error("Could not list the channels to archive; archiving is retried in the next run.", e);
+            return;
+        }
+        // A channel that fails does not hold back the others.
+        for (long channelId : channelIds) {
+            try {
+                archiveChannel(getChannel(channelId), cutoffId);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Archiving channel [{}] failed; it is retried in the next run.", channelId, e);
+            }
+        }
+    }
+
+    private void archiveChannel(final ChannelArchive channel, final long cutoffId) throws IOException {
+        // Rows archived in the previous run; every node has listed their segment by now.
+        final long archivedUpTo = channel.getArchivedUpTo();
+        int deleted = 0;
+        if (archivedUpTo != Long.MIN_VALUE) {
+            List<Long> ids;
+            while (!(ids = messageRepository.findIdsByChannelIdAndIdLessThanEqual(channel.channelId, archivedUpTo,
+                    PageRequest.of(0, DELETE_BATCH_SIZE))).isEmpty()) {
+                messageRepository.deleteAllByIdInBatch(ids);
+                deleted += ids.size();
+            }
+        }
+
+        final long pending = messageRepository.countByChannelIdAndIdBetween(channel.channelId, archivedUpTo, cutoffId);
+        if (pending < minMessages) {
+            if (deleted > 0)
+                logger.info("Deleted {} archived messages of channel [{}] from the table.", deleted, channel.channelId);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final ArchiveSegment segment = writeSegment(channel, archivedUpTo, cutoffId);
+        if (segment != null)
+            channel.add(segment);
+        logger.info("Archived {} messages of channel [{}] in {} ms and deleted {} archived earlier.",
+                segment != null ? segment.count : 0, channel.channelId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), deleted);
+    }
+
+    private ArchiveSegment writeSegment(final ChannelArchive channel, final long after, final long before)
+            throws IOException {
+        Files.createDirectories(channel.channelDirectory);
+        final Path temporary = channel.channelDirectory.resolve(TEMPORARY_FILE);
+        final SegmentWriter writer;
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writer = new SegmentWriter(file);
+            long cursor = after;
+            Slice<MessageProjection> batch;
+            do {
+                batch = messageRepository.findProjectionsByChannelIdAndIdBetween(channel.channelId, cursor, before,
+                        PageRequest.of(0, READ_BATCH_SIZE, Sort.by(Sort.Direction.ASC, "id")));
+                for (MessageProjection message : batch)
+                    writer.add(message);
+                if (batch.hasContent())
+                    cursor = batch.getContent().getLast().id();
+            } while (batch.hasNext());
+            writer.finish();
+            file.force(true);
+        }
+        if (writer.count == 0) {
+            Files.delete(temporary);
+            return null;
+        }
+
+        final Path path = channel.channelDirectory.resolve(
+                String.format("%020d-%020d", writer.firstId, writer.lastId) + SEGMENT_SUFFIX);
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return ArchiveSegment.open(path);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (archiveScheduler == null)
+            return;
+        archiveScheduler.shutdownNow();
+        archiveScheduler.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private record ArchivedMessage(long id, UUID authorId, String username, String content) {}
+
+    /**
+     * The segments of one channel, oldest first. Positions are record numbers across all of them.
+     * The last inflated block is kept, as paging through history reads the same block repeatedly.
+     */
+    private final class ChannelArchive {
+        private final long channelId;
+        private final Path channelDirectory;
+        private final List<ArchiveSegment> segments = new ArrayList<>();
+        private final Set<Path> listed = new HashSet<>();
+        private int count;
+        private long listedAt;
+        private boolean isListed;
+        private String channelName;
+
+        private ArchiveSegment cachedSegment;
+        private int cachedBlock;
+        private ArchivedMessage[] cachedMessages;
+
+        private ChannelArchive(final long channelId, final Path channelDirectory) {
+            this.channelId = channelId;
+            this.channelDirectory = channelDirectory;
+        }
+
+        private synchronized long getArchivedUpTo() {
+            refresh();
+            return segments.isEmpty() ? Long.MIN_VALUE : segments.getLast().lastId;
+        }
+
+        private synchronized int count() {
+            refresh();
+            return count;
+        }
+
+        private synchronized void add(final ArchiveSegment segment) {
+            if (listed.add(segment.path)) {
+                segments.add(segment);
+                count += segment.count;
+            }
+        }
+
+        // Picks up segments written by the archiver on another node.
+        private void refresh() {
+            if (isListed && System.nanoTime() - listedAt < LISTING_TTL_NANOS)
+                return;
+            isListed = true;
+            listedAt = System.nanoTime();
+            if (!Files.isDirectory(channelDirectory))
+                return;
+
+            final List<Path> paths;
+            try (Stream<Path> files = Files.list(channelDirectory)) {
+                paths = files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not list " + channelDirectory + ".", e);
+            }
+            for (ArchiveSegment segment : List.copyOf(segments)) {
+                if (!paths.contains(segment.path)) {
+                    logger.error("Archive segment {} is gone; its messages can no longer be read.", segment.path);
+                    segments.remove(segment);
+                    listed.remove(segment.path);
+                    count -= segment.count;
+                    cachedSegment = null;
+                }
+            }
+            for (Path path : paths) {
+                if (listed.contains(path))
+                    continue;
+                try {
+                    add(ArchiveSegment.open(path));
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Skipping unreadable archive segment {}; its messages cannot be read from the archive.",
+                            path, e);
+                }
+            }
+            segments.sort(Comparator.comparingLong(segment -> segment.firstId));
+        }
+
+        private synchronized int countBelow(final long id) {
+            refresh();
+            int below = 0;
+            for (ArchiveSegment segment : segments) {
+                if (segment.lastId < id) {
+                    below += segment.count;
+                    continue;
+                }
+                final int block = segment.findBlock(id);
+                if (block >= 0) {
+                    below += segment.blockStarts[block];
+                    for (ArchivedMessage message : getBlock(segment, block)) {
+                        if (message.id() >= id)
+                            break;
+                        below++;
+                    }
+                }
+                break;
+            }
+            return below;
+        }
+
+        private synchronized List<MessageBasicDto> read(final int start, final int end) {
+            refresh();
+            final List<MessageBasicDto> messages = new ArrayList<>(Math.max(0, end - start));
+            int segmentStart = 0;
+            for (ArchiveSegment segment : segments) {
+                final int segmentEnd = segmentStart + segment.count;
+                for (int position = Math.max(start, segmentStart); position < Math.min(end, segmentEnd); ) {
+                    final int offset = position - segmentStart;
+                    final int block = segment.findBlockAt(offset);
+                    final ArchivedMessage[] blockMessages = getBlock(segment, block);
+                    for (int i = offset - segment.blockStarts[block]; i < blockMessages.length && position < end; i++, position++)
+                        messages.add(toDto(blockMessages[i]));
+                }
+                if (segmentEnd >= end)
+                    break;
+                segmentStart = segmentEnd;
+            }
+            return messages;
+        }
+
+        private synchronized List<MessageBasicDto> findByIds(final Collection<Long> ids) {
+            final List<MessageBasicDto> messages = new ArrayList<>(ids.size());
+            for (long id : ids) {
+                final int position = countBelow(id);
+                if (position == count)
+                    continue;
+                final MessageBasicDto message = read(position, position + 1).getFirst();
+                if (message.getId() == id)
+                    messages.add(message);
+            }
+            return messages;
+        }
+
+        private void forEachText(final Consumer<MessageTextProjection> action) {
+            final List<ArchiveSegment> snapshot;
+            synchronized (this) {
+                refresh();
+                snapshot = List.copyOf(segments);
+            }
+            for (ArchiveSegment segment : snapshot) {
+                for (int block = 0; block < segment.blockFirstIds.length; block++) {
+                    final ArchivedMessage[] messages;
+                    try {
+                        messages = segment.inflate(block);
+                    } catch (UncheckedIOException e) {
+                        logger.error("Skipping an unreadable block of {}.", segment.path, e);
+                        continue;
+                    }
+                    for (ArchivedMessage message : messages)
+                        action.accept(new MessageTextProjection(message.id(), channelId, message.content()));
+                }
+            }
+        }
+
+        private ArchivedMessage[] getBlock(final ArchiveSegment segment, final int block) {
+            if (cachedSegment != segment || cachedBlock != block) {
+                cachedMessages = segment.inflate(block);
+                cachedSegment = segment;
+                cachedBlock = block;
+            }
+            return cachedMessages;
+        }
+
+        private MessageBasicDto toDto(final ArchivedMessage message) {
+            if (channelName == null)
+                channelName = channelRepository.findById(channelId).map(Channel::getName).orElse("");
+            return MessageBasicDto.fromProjection(new MessageProjection(message.id(), message.content(),
+                    message.authorId(), message.username(), channelId, channelName));
+        }
+    }
+
+    /**
+     * An immutable segment file and its block index. Blocks are read with a short-lived file handle,
+     * as archived history is read rarely.
+     */
+    private static final class ArchiveSegment {
+        private final Path path;
+        private final long firstId;
+        private final long lastId;
+        private final int count;
+        private final long[] blockFirstIds;
+        private final long[] blockOffsets;
+        private final int[] blockCompressedLengths;
+        private final int[] blockLengths;
+        // Position of each block's first record within the segment.
+        private final int[] blockStarts;
+
+        private ArchiveSegment(final Path path, final ByteBuffer index, final int blockCount) {
+            this.path = path;
+            final String[] ids = path.getFileName().toString().replace(SEGMENT_SUFFIX, "").split("-");
+            this.firstId = Long.parseLong(ids[0]);
+            this.lastId = Long.parseLong(ids[1]);
+            this.blockFirstIds = new long[blockCount];
+            this.blockOffsets = new long[blockCount];
+            this.blockCompressedLengths = new int[blockCount];
+            this.blockLengths = new int[blockCount];
+            this.blockStarts = new int[blockCount];
+            int records = 0;
+            for (int i = 0; i < blockCount; i++) {
+                blockFirstIds[i] = index.getLong();
+                blockOffsets[i] = index.getLong();
+                blockCompressedLengths[i] = index.getInt();
+                blockLengths[i] = index.getInt();
+                blockStarts[i] = records;
+                records += index.getInt();
+                index.getInt();
+            }
+            this.count = records;
+        }
+
+        private static ArchiveSegment open(final Path path) throws IOException {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                final long size = file.size();
+                if (size < FOOTER_BYTES)
+                    throw new IOException(path + " is not a message archive segment.");
+                final ByteBuffer footer = readFully(file, size - FOOTER_BYTES, FOOTER_BYTES);
+                final long indexOffset = footer.getLong();
+                final int blockCount = footer.getInt();
+                if (footer.getInt() != MAGIC || blockCount < 0
+                        || indexOffset + (long) blockCount * INDEX_ENTRY_BYTES != size - FOOTER_BYTES)
+                    throw new IOException(path + " is not a message archive segment.");
+                return new ArchiveSegment(path, readFully(file, indexOffset, blockCount * INDEX_ENTRY_BYTES), blockCount);
+            }
+        }
+
+        /**
+         * The block that would hold {@code id}, or -1 if it is below the first one.
+         */
+        private int findBlock(final long id) {
+            final int found = Arrays.binarySearch(blockFirstIds, id);
+            return found >= 0 ? found : -found - 2;
+        }
+
+        private int findBlockAt(final int position) {
+            final int found = Arrays.binarySearch(blockStarts, position);
+            return found >= 0 ? found : -found - 2;
+        }
+
+        private ArchivedMessage[] inflate(final int block) {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                final ByteBuffer compressed = readFully(file, blockOffsets[block], blockCompressedLengths[block]);
+                final byte[] bytes = new byte[blockLengths[block]];
+                final Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(compressed);
+                    if (inflater.inflate(bytes) != bytes.length || !inflater.finished())
+                        throw new IOException("Block " + block + " of " + path + " is corrupt.");
+                } finally {
+                    inflater.end();
+                }
+
+                final ByteBuffer records = ByteBuffer.wrap(bytes);
+                final int blockCount = (block + 1 < blockStarts.length ? blockStarts[block + 1] : count) - blockStarts[block];
+                final ArchivedMessage[] messages = new ArchivedMessage[blockCount];
+                for (int i = 0; i < blockCount; i++) {
+                    final long id = records.getLong();
+                    final UUID authorId = new UUID(records.getLong(), records.getLong());
+                    final String username = getString(records, records.getShort() & 0xFFFF);
+                    final String content = getString(records, records.getInt());
+                    messages[i] = new ArchivedMessage(id, authorId, username, content);
+                }
+                return messages;
+            } catch (IOException | DataFormatException e) {
+                throw new UncheckedIOException(new IOException("Could not read block " + block + " of " + path + ".", e));
+            }
+        }
+
+        private static String getString(final ByteBuffer buffer, final int length) {
+            final String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        private static ByteBuffer readFully(final FileChannel file, final long position, final int length) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer, position + buffer.position()) < 0)
+                    throw new IOException("Unexpected end of file.");
+            }
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * Writes records into deflated blocks, then the block index and the footer.
+     */
+    private static final class SegmentWriter {
+        private final FileChannel file;
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_BYTES + 1024);
+        private final DataOutputStream records = new DataOutputStream(block);
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexEntries = new DataOutputStream(index);
+        private final Deflater deflater = new Deflater();
+        private final byte[] deflated = new byte[BLOCK_BYTES];
+        private long offset;
+        private int blockCount;
+        private int blockRecords;
+        private long blockFirstId;
+        private int count;
+        private long firstId;
+        private long lastId;
+
+        private SegmentWriter(final FileChannel file) {
+            this.file = file;
+        }
+
+        private void add(final MessageProjection message) throws IOException {
+            if (blockRecords == 0)
+                blockFirstId = message.id();
+            if (count == 0)
+                firstId = message.id();
+            final byte[] username = message.authorUsername().getBytes(StandardCharsets.UTF_8);
+            final byte[] content = message.content().getBytes(StandardCharsets.UTF_8);
+            records.writeLong(message.id());
+            records.writeLong(message.authorId().getMostSignificantBits());
+            records.writeLong(message.authorId().getLeastSignificantBits());
+            records.writeShort(username.length);
+            records.write(username);
+            records.writeInt(content.length);
+            records.write(content);
+            blockRecords++;
+            count++;
+            lastId = message.id();
+            if (block.size() >= BLOCK_BYTES)
+                flushBlock();
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockRecords == 0)
+                return;
+            final long blockOffset = offset;
+            deflater.reset();
+            deflater.setInput(block.toByteArray());
+            deflater.finish();
+            while (!deflater.finished())
+                write(ByteBuffer.wrap(deflated, 0, deflater.deflate(deflated)));
+
+            indexEntries.writeLong(blockFirstId);
+            indexEntries.writeLong(blockOffset);
+            indexEntries.writeInt((int) (offset - blockOffset));
+            indexEntries.writeInt(block.size());
+            indexEntries.writeInt(blockRecords);
+            indexEntries.writeInt(0);
+            blockCount++;
+            blockRecords = 0;
+            block.reset();
+        }
+
+        private void finish() throws IOException {
+            flushBlock();
+            deflater.end();
+            final long indexOffset = offset;
+            write(ByteBuffer.wrap(index.toByteArray()));
+            write(ByteBuffer.allocate(FOOTER_BYTES).putLong(indexOffset).putInt(blockCount).putInt(MAGIC).flip());
+        }
+
+        private void write(final ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining())
+                offset += file.write(buffer);
+        }
+    }
+}
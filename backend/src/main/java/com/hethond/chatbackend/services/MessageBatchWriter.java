@@ -0,0 +1,160 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.exceptions.ApiException;
+import com.hethond.chatbackend.repositories.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for posted messages. Messages are queued and a single
+ * writer thread commits them in batches, one transaction per batch. Each caller
+ * gets a future that completes once its message has been committed. A batch that
+ * fails is split and retried, so a message the database rejects fails alone.
+ */
+@Service
+public class MessageBatchWriter implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(MessageBatchWriter.class);
+
+    private record PendingMessage(Message message, CompletableFuture<Message> result) {}
+
+    private final MessageRepository messageRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final BlockingQueue<PendingMessage> queue;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    @Autowired
+    public MessageBatchWriter(final MessageRepository messageRepository,
+                              final PlatformTransactionManager transactionManager,
+                              final @Value("${app.messageWriteBehind:false}") boolean enabled,
+                              final @Value("${app.messageWriteBehindQueueCapacity:50000}") int queueCapacity,
+                              final @Value("${app.messageWriteBehindBatchSize:500}") int maxBatchSize,
+                              final @Value("${app.messageWriteBehindBatchDelayMillis:5}") long maxBatchDelayMillis) {
+        this.messageRepository = messageRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        if (enabled) {
+            running = true;
+            writerThread = new Thread(this::runWriter, "message-writer");
+            writerThread.start();
+            logger.info("MessageBatchWriter initialized with batches of up to {} messages or {} ms.", maxBatchSize, maxBatchDelayMillis);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CompletableFuture<Message> submit(final Message message) {
+        if (!running)
+            throw new IllegalStateException("Write-behind persistence is not running.");
+
+        final PendingMessage pending = new PendingMessage(message, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            logger.warn("Message write-behind queue is full; rejecting message.");
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    "The server is busy. Please try again later.");
+        }
+        return pending.result();
+    }
+
+    private void runWriter() {
+        final List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                final PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+
+                // Gather until the batch is full or the oldest message has waited long enough.
+                final long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0)
+                        continue;
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        break;
+                    final PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(final List<PendingMessage> batch) {
+        final List<Message> messages = batch.stream().map(PendingMessage::message).toList();
+        try {
+            final List<Message> saved = transactionTemplate.execute(status -> messageRepository.saveAll(messages));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(saved.get(i));
+            }
+            logger.debug("Committed a batch of {} messages.", batch.size());
+        } catch (RuntimeException e) {
+            // A bad row fails the whole transaction; commit the halves apart so only its own poster gets the error.
+            if (batch.size() > 1 && !isDatabaseUnavailable(e)) {
+                logger.warn("Failed to commit a batch of {} messages; retrying it in halves.", batch.size(), e);
+                final int half = batch.size() / 2;
+                writeBatch(batch.subList(0, half));
+                writeBatch(batch.subList(half, batch.size()));
+                return;
+            }
+            logger.error("Failed to commit a batch of {} messages.", batch.size(), e);
+            for (PendingMessage pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    // Retrying smaller batches cannot help while the database cannot be reached.
+    private static boolean isDatabaseUnavailable(final RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (writerThread == null)
+            return;
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
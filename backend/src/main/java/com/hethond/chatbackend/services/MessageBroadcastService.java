@@ -0,0 +1,227 @@
+package com.hethond.chatbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hethond.chatbackend.entities.dto.EncodedMessageDto;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+
+@Service
+public class MessageBroadcastService {
+    private static final Logger logger = LoggerFactory.getLogger(MessageBroadcastService.class);
+
+    public static final String CHANNEL_TOPIC_PREFIX = "/topic/channels/";
+    public static final String USER_MESSAGES_DESTINATION = "/topic/messages";
+
+    public enum DeliveryMode {
+        /** One send per member to {@code /user/topic/messages}. */
+        USER,
+        /** A single publish to {@code /topic/channels/{id}}, authorized at subscribe time. */
+        TOPIC
+    }
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final FanOutDispatcher fanOutDispatcher;
+    private final ChannelMembershipIndex channelMembershipIndex;
+    private final PresenceRegistry presenceRegistry;
+    private final RedisMessageRelay messageRelay;
+    private final ChannelHistoryCache channelHistoryCache;
+    private final RedisMessageStream messageStream;
+    private final MessageSearchIndex messageSearchIndex;
+    private final DeliveryMode deliveryMode;
+    private final Timer localFanOutTimer;
+    private final Timer relayedFanOutTimer;
+    private final DistributionSummary recipientSummary;
+
+    @Autowired
+    public MessageBroadcastService(final SimpMessagingTemplate messagingTemplate,
+                                   final ObjectMapper objectMapper,
+                                   final FanOutDispatcher fanOutDispatcher,
+                                   final ChannelMembershipIndex channelMembershipIndex,
+                                   final PresenceRegistry presenceRegistry,
+                                   final RedisMessageRelay messageRelay,
+                                   final ChannelHistoryCache channelHistoryCache,
+                                   final RedisMessageStream messageStream,
+                                   final MessageSearchIndex messageSearchIndex,
+                                   final @Value("${app.messageDeliveryMode:USER}") DeliveryMode deliveryMode,
+                                   final MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.fanOutDispatcher = fanOutDispatcher;
+        this.channelMembershipIndex = channelMembershipIndex;
+        this.presenceRegistry = presenceRegistry;
+        this.messageRelay = messageRelay;
+        this.channelHistoryCache = channelHistoryCache;
+        this.messageStream = messageStream;
+        this.messageSearchIndex = messageSearchIndex;
+        this.deliveryMode = deliveryMode;
+        this.localFanOutTimer = fanOutTimer("local", meterRegistry);
+        this.relayedFanOutTimer = fanOutTimer("relayed", meterRegistry);
+        this.recipientSummary = DistributionSummary.builder("chat.fanout.recipients")
+                .description("Sends made on this node for one message (1 per message in TOPIC mode)")
+                .register(meterRegistry);
+
+        if (messageRelay.isEnabled())
+            messageRelay.subscribe(this::relayed);
+
+        logger.info("MessageBroadcastService initialized with delivery mode {}.", deliveryMode);
+    }
+
+    private static Timer fanOutTimer(final String origin, final MeterRegistry meterRegistry) {
+        return Timer.builder("chat.fanout.duration")
+                .description("Time to hand one message to the broker for every recipient on this node")
+                .tag("origin", origin)
+                .register(meterRegistry);
+    }
+
+    public static String getChannelTopic(final long channelId) {
+        return CHANNEL_TOPIC_PREFIX + channelId;
+    }
+
+    /**
+     * Hands the message to the channel's fan-out partition and returns immediately.
+     * Recipients are the channel's members at the time of the call.
+     * The message is added to the channel's cached history before this returns.
+     * Each side effect is attempted on its own; one that fails is logged and does not stop the others.
+     */
+    public void broadcast(final long channelId, final MessageBasicDto message) {
+        final ChannelMembershipIndex.MemberIdSet recipients;
+        try {
+            channelHistoryCache.append(channelId, message);
+            recipients = deliveryMode == DeliveryMode.USER ? channelMembershipIndex.getMembers(channelId) : null;
+        } catch (RuntimeException e) {
+            logger.error("Failed to prepare message [{}] for channel [{}]; it is not broadcast.", message.getId(), channelId, e);
+            return;
+        }
+
+        final boolean queued = fanOutDispatcher.dispatch(channelId, () -> {
+            final byte[] payload;
+            try {
+                payload = EncodedMessageDto.fromMessageDto(message, objectMapper).getPayloadBytes();
+            } catch (RuntimeException e) {
+                logger.error("Failed to encode message [{}] for channel [{}]; it is not broadcast.", message.getId(), channelId, e);
+                return;
+            }
+            try {
+                localFanOutTimer.record(() -> deliver(channelId, recipients, payload));
+            } catch (RuntimeException e) {
+                logger.error("Failed to deliver message [{}] to channel [{}].", message.getId(), channelId, e);
+            }
+            if (messageRelay.isEnabled()) {
+                try {
+                    messageRelay.publish(channelId, payload);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to relay message [{}] for channel [{}].", message.getId(), channelId, e);
+                }
+            }
+            // Appended from the channel's partition, so messages reach the stream in the order they were broadcast.
+            if (messageStream.isEnabled()) {
+                try {
+                    messageStream.append(channelId, message.getId(), payload);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to append message [{}] to the stream of channel [{}].", message.getId(), channelId, e);
+                }
+            }
+            indexMessage(channelId, message);
+        });
+        // The dropped task would have appended the message; pages read from the stream must not skip it.
+        if (!queued && messageStream.isEnabled()) {
+            try {
+                messageStream.markGap(channelId, message.getId());
+            } catch (RuntimeException e) {
+                logger.error("Failed to mark message [{}] missing from the stream of channel [{}].", message.getId(), channelId, e);
+            }
+        }
+    }
+
+    /**
+     * Delivers a frame relayed from another node to the sessions connected to this node.
+     */
+    private void relayed(final long channelId, final byte[] payload) {
+        if (channelHistoryCache.isCached(channelId) || messageSearchIndex.isEnabled()) {
+            try {
+                final MessageBasicDto message = objectMapper.readValue(payload, MessageBasicDto.class);
+                channelHistoryCache.append(channelId, message);
+                indexMessage(channelId, message);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not decode relayed message for channel [{}]; dropping its cached history.", channelId, e);
+                channelHistoryCache.evict(channelId);
+            }
+        }
+
+        final ChannelMembershipIndex.MemberIdSet recipients;
+        try {
+            recipients = deliveryMode == DeliveryMode.USER ? channelMembershipIndex.getMembers(channelId) : null;
+        } catch (RuntimeException e) {
+            logger.error("Failed to load the members of channel [{}]; a relayed message is not delivered.", channelId, e);
+            return;
+        }
+        // Queued without waiting: this runs on the Redis listener thread, which also serves session invalidations.
+        fanOutDispatcher.tryDispatch(channelId, () -> {
+            try {
+                relayedFanOutTimer.record(() -> deliver(channelId, recipients, payload));
+            } catch (RuntimeException e) {
+                logger.error("Failed to deliver a relayed message to channel [{}].", channelId, e);
+            }
+        });
+    }
+
+    private void indexMessage(final long channelId, final MessageBasicDto message) {
+        if (!messageSearchIndex.isEnabled())
+            return;
+        try {
+            messageSearchIndex.index(channelId, message.getId(), message.getContent());
+        } catch (RuntimeException e) {
+            logger.error("Failed to index message [{}] of channel [{}] for search.", message.getId(), channelId, e);
+        }
+    }
+
+    private void deliver(final long channelId,
+                         final ChannelMembershipIndex.MemberIdSet recipients,
+                         final byte[] payload) {
+        // Built once; the template only re-wraps the headers per destination and keeps the payload array.
+        final Message<byte[]> frame = toFrame(payload);
+
+        if (deliveryMode == DeliveryMode.TOPIC) {
+            messagingTemplate.send(getChannelTopic(channelId), frame);
+            recipientSummary.record(1);
+            return;
+        }
+
+        // Only sessions on this node can receive this node's sends, so members without one are skipped
+        // before building a destination for them, whatever their presence elsewhere; with the relay enabled
+        // the node holding their sessions delivers to them.
+        final int[] sent = {0};
+        recipients.forEach(recipientId -> {
+            if (presenceRegistry.hasLocalSession(recipientId)) {
+                messagingTemplate.send(getUserDestination(recipientId.toString()), frame);
+                sent[0]++;
+            }
+        });
+        recipientSummary.record(sent[0]);
+    }
+
+    private Message<byte[]> toFrame(final byte[] payload) {
+        final SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private String getUserDestination(final String userId) {
+        return messagingTemplate.getUserDestinationPrefix() + userId + USER_MESSAGES_DESTINATION;
+    }
+}
@@ -0,0 +1,69 @@
+package com.hethond.chatbackend.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered 64-bit message ids: 41 bits of milliseconds since {@link #EPOCH_MILLIS},
+ * 10 bits of node id and a 12-bit sequence. Ids are assigned before insert, so Hibernate can batch
+ * them, and they sort by creation time. Every generated id is larger than any auto-increment id
+ * issued before the switch, so older rows keep their ids and ordering.
+ */
+@Service
+public class MessageIdGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(MessageIdGenerator.class);
+
+    public static final long EPOCH_MILLIS = 1735689600000L; // 2025-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+
+    // Last issued (timestamp << SEQUENCE_BITS | sequence). A sequence overflow carries into the
+    // timestamp, and a clock that moves backwards keeps counting from the last value, so ids never repeat.
+    private final AtomicLong state = new AtomicLong();
+
+    @Autowired
+    public MessageIdGenerator(final @Value("${app.nodeId:0}") long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID)
+            throw new IllegalArgumentException("app.nodeId must be between 0 and " + MAX_NODE_ID + ", got " + nodeId + ".");
+        this.nodeId = nodeId;
+
+        logger.info("MessageIdGenerator initialized for node {}.", nodeId);
+    }
+
+    public long nextId() {
+        while (true) {
+            final long last = state.get();
+            final long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            final long next = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+            if (state.compareAndSet(last, next)) {
+                return ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS))
+                        | (nodeId << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * Returns the creation time of a generated id in epoch milliseconds.
+     */
+    public static long getTimestampMillis(final long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    /**
+     * Returns the lowest id generated at or after {@code epochMillis}; every lower id is older.
+     */
+    public static long getMinIdAt(final long epochMillis) {
+        return Math.max(0, epochMillis - EPOCH_MILLIS) << (NODE_BITS + SEQUENCE_BITS);
+    }
+}
@@ -0,0 +1,387 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.dto.MessageTextProjection;
+import com.hethond.chatbackend.exceptions.ApiException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory inverted index of the words of every message, per channel, for history search.
+ * <p>
+ * A channel numbers its messages in the order they are indexed. Each word maps to the ascending
+ * numbers of the messages containing it, stored as delta-encoded varints, so most postings take
+ * a single byte, with a skip entry every 128 postings. A search decodes the postings of its rarest
+ * word a block at a time from the newest end and stops once the page is full. The index is rebuilt
+ * from the message store after startup and then receives every posted or relayed message; searches
+ * are rejected until the rebuild has finished.
+ * <p>
+ * Words are runs of letters and digits, compared in lower case; a query matches the messages
+ * that contain all of its words.
+ */
+@Service
+public class MessageSearchIndex {
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchIndex.class);
+
+    private static final int MAX_TERM_LENGTH = 32;
+    private static final int MAX_QUERY_TERMS = 8;
+
+    private enum State { REBUILDING, READY, FAILED }
+
+    private final MessageStore messageStore;
+    private final boolean enabled;
+    private final ConcurrentHashMap<Long, ChannelIndex> channels = new ConcurrentHashMap<>();
+    private final AtomicLong indexedMessages = new AtomicLong();
+
+    // Messages posted during the rebuild; added once it has read the store. Guarded by itself.
+    private final List<MessageTextProjection> pending = new ArrayList<>();
+    private volatile State state = State.REBUILDING;
+
+    @Autowired
+    public MessageSearchIndex(final MessageStore messageStore,
+                              final @Value("${app.messageSearchEnabled:false}") boolean enabled,
+                              final MeterRegistry meterRegistry) {
+        this.messageStore = messageStore;
+        this.enabled = enabled;
+        Gauge.builder("chat.search.indexed", indexedMessages, AtomicLong::get)
+                .description("Messages in the in-memory search index")
+                .register(meterRegistry);
+
+        logger.info("MessageSearchIndex initialized; message search is {}.", enabled ? "enabled" : "disabled");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRebuild() {
+        if (!enabled)
+            return;
+        final Thread rebuildThread = new Thread(this::rebuild, "search-index-rebuild");
+        rebuildThread.setDaemon(true);
+        rebuildThread.start();
+    }
+
+    /**
+     * Adds a committed message. Indexing a message the rebuild has already read is a no-op.
+     */
+    public void index(final long channelId, final long messageId, final String content) {
+        if (!enabled)
+            return;
+        if (state != State.READY) {
+            synchronized (pending) {
+                if (state == State.REBUILDING) {
+                    pending.add(new MessageTextProjection(messageId, channelId, content));
+                    return;
+                }
+                if (state == State.FAILED)
+                    return;
+            }
+        }
+        add(channelId, messageId, content);
+    }
+
+    /**
+     * Ids of up to {@code limit} messages of the channel that are older than {@code before} and
+     * contain every word of the query, newest first.
+     */
+    public List<Long> search(final long channelId, final String query, final long before, final int limit) {
+        if (!enabled)
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE.value(), "Message search is disabled.");
+        if (state != State.READY)
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    "Message search is not available yet. Please try again later.");
+
+        final Set<String> terms = tokenize(query);
+        if (terms.isEmpty())
+            throw new ApiException(HttpStatus.BAD_REQUEST.value(), "The search query must contain a word.");
+        if (terms.size() > MAX_QUERY_TERMS)
+            throw new ApiException(HttpStatus.BAD_REQUEST.value(),
+                    "The search query may contain at most " + MAX_QUERY_TERMS + " words.");
+
+        final ChannelIndex channel = channels.get(channelId);
+        return channel == null ? List.of() : channel.search(terms, before, limit);
+    }
+
+    private void rebuild() {
+        final long start = System.nanoTime();
+        try {
+            messageStore.forEachText(message -> add(message.channelId(), message.id(), message.content()));
+        } catch (RuntimeException e) {
+            logger.error("Could not rebuild the message search index; message search stays unavailable.", e);
+            synchronized (pending) {
+                state = State.FAILED;
+                pending.clear();
+            }
+            channels.clear();
+            indexedMessages.set(0);
+            return;
+        }
+
+        channels.values().forEach(ChannelIndex::completeRebuild);
+        synchronized (pending) {
+            for (MessageTextProjection message : pending)
+                add(message.channelId(), message.id(), message.content());
+            pending.clear();
+            state = State.READY;
+        }
+        logger.info("Rebuilt the message search index with {} messages in {} channels in {} ms.",
+                indexedMessages.get(), channels.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void add(final long channelId, final long messageId, final String content) {
+        final ChannelIndex channel = channels.computeIfAbsent(channelId, id -> new ChannelIndex());
+        if (channel.add(messageId, tokenize(content)))
+            indexedMessages.incrementAndGet();
+    }
+
+    static Set<String> tokenize(final String text) {
+        final Set<String> terms = new HashSet<>();
+        if (text == null)
+            return terms;
+
+        final StringBuilder term = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            final int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                // Longer words are cut, consistently for messages and queries.
+                if (term.length() < MAX_TERM_LENGTH)
+                    term.appendCodePoint(Character.toLowerCase(codePoint));
+            } else if (!term.isEmpty()) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        }
+        if (!term.isEmpty())
+            terms.add(term.toString());
+        return terms;
+    }
+
+    /**
+     * The postings of one channel. Message numbers index {@code messageIds}, which is in arrival
+     * order; {@code prefixMaxIds} holds the highest id among each block of 64 numbers and all
+     * earlier ones, so a search walking back from the newest message knows when it can stop.
+     */
+    private static final class ChannelIndex {
+        private static final int BLOCK_SHIFT = 6;
+
+        private final HashMap<String, PostingList> postings = new HashMap<>();
+        private long[] messageIds = new long[16];
+        private long[] prefixMaxIds = new long[1];
+        private int size;
+        // messageIds[0, sortedSize) is what the rebuild read, in id order.
+        private int sortedSize;
+
+        private synchronized boolean add(final long messageId, final Set<String> terms) {
+            if (sortedSize > 0 && messageId <= messageIds[sortedSize - 1]
+                    && Arrays.binarySearch(messageIds, 0, sortedSize, messageId) >= 0)
+                return false;
+
+            final int number = size;
+            if (number == messageIds.length)
+                messageIds = Arrays.copyOf(messageIds, number + (number >> 1));
+            messageIds[number] = messageId;
+
+            final int block = number >> BLOCK_SHIFT;
+            if (block == prefixMaxIds.length)
+                prefixMaxIds = Arrays.copyOf(prefixMaxIds, block + (block >> 1) + 1);
+            final long previousMax = block > 0 ? prefixMaxIds[block - 1] : Long.MIN_VALUE;
+            final long blockMax = (number & ((1 << BLOCK_SHIFT) - 1)) == 0 ? previousMax : prefixMaxIds[block];
+            prefixMaxIds[block] = Math.max(blockMax, messageId);
+            size++;
+
+            for (String term : terms)
+                postings.computeIfAbsent(term, t -> new PostingList()).add(number);
+            return true;
+        }
+
+        private synchronized void completeRebuild() {
+            sortedSize = size;
+            messageIds = Arrays.copyOf(messageIds, Math.max(size, 16));
+            postings.values().forEach(PostingList::trim);
+        }
+
+        private synchronized List<Long> search(final Set<String> terms, final long before, final int limit) {
+            final PostingList[] lists = new PostingList[terms.size()];
+            int listCount = 0;
+            for (String term : terms) {
+                final PostingList list = postings.get(term);
+                if (list == null)
+                    return List.of();
+                lists[listCount++] = list;
+            }
+            // Walk the rarest word's postings back from the newest, one block of candidates at a time.
+            Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+            final int[] candidates = new int[PostingList.SKIP_INTERVAL];
+
+            // The newest ids below the cursor, kept in descending order.
+            final long[] newest = new long[limit];
+            int found = 0;
+            blocks:
+            for (int block = lists[0].blockCount() - 1; block >= 0; block--) {
+                int candidateCount = lists[0].decodeBlock(block, candidates);
+                if (found == limit && prefixMaxIds[candidates[candidateCount - 1] >> BLOCK_SHIFT] < newest[limit - 1])
+                    break;
+                for (int i = 1; i < lists.length && candidateCount > 0; i++)
+                    candidateCount = lists[i].retain(candidates, candidateCount);
+
+                for (int i = candidateCount - 1; i >= 0; i--) {
+                    final int number = candidates[i];
+                    if (found == limit && prefixMaxIds[number >> BLOCK_SHIFT] < newest[limit - 1])
+                        break blocks;
+                    final long id = messageIds[number];
+                    if (id >= before || (found == limit && id <= newest[limit - 1]))
+                        continue;
+
+                    int position = Math.min(found, limit - 1);
+                    while (position > 0 && newest[position - 1] < id) {
+                        newest[position] = newest[position - 1];
+                        position--;
+                    }
+                    newest[position] = id;
+                    if (found < limit)
+                        found++;
+                }
+            }
+
+            final List<Long> ids = new ArrayList<>(found);
+            for (int i = 0; i < found; i++)
+                ids.add(newest[i]);
+            return ids;
+        }
+    }
+
+    /**
+     * Ascending message numbers as varint-encoded gaps. Every {@link #SKIP_INTERVAL} postings start
+     * a block, whose byte offset and preceding number are kept so it can be decoded on its own.
+     */
+    private static final class PostingList {
+        private static final int SKIP_INTERVAL = 128;
+
+        private byte[] data = new byte[4];
+        private int length;
+        private int size;
+        private int last = -1;
+        private int[] skipPositions = new int[1];
+        private int[] skipNumbers = new int[1];
+
+        private int size() {
+            return size;
+        }
+
+        private int blockCount() {
+            return (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+        }
+
+        private void add(final int number) {
+            if (size % SKIP_INTERVAL == 0) {
+                final int block = size / SKIP_INTERVAL;
+                if (block == skipPositions.length) {
+                    skipPositions = Arrays.copyOf(skipPositions, block * 2);
+                    skipNumbers = Arrays.copyOf(skipNumbers, block * 2);
+                }
+                skipPositions[block] = length;
+                skipNumbers[block] = last;
+            }
+            if (length + 5 > data.length)
+                data = Arrays.copyOf(data, Math.max(length + 5, length + (length >> 1)));
+            int gap = number - last;
+            while ((gap & ~0x7F) != 0) {
+                data[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            data[length++] = (byte) gap;
+            last = number;
+            size++;
+        }
+
+        /**
+         * Decodes one block into {@code numbers} and returns how many it holds.
+         */
+        private int decodeBlock(final int block, final int[] numbers) {
+            final int count = Math.min(SKIP_INTERVAL, size - block * SKIP_INTERVAL);
+            int position = skipPositions[block];
+            int number = skipNumbers[block];
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                number += gap;
+                numbers[i] = number;
+            }
+            return count;
+        }
+
+        /**
+         * Keeps the first {@code count} candidates (ascending) that are in this list and returns how many remain.
+         */
+        private int retain(final int[] candidates, final int count) {
+            // Start at the last block that begins before the first candidate.
+            int low = 0;
+            int high = blockCount() - 1;
+            while (low < high) {
+                final int middle = (low + high + 1) >>> 1;
+                if (skipNumbers[middle] < candidates[0])
+                    low = middle;
+                else
+                    high = middle - 1;
+            }
+
+            int kept = 0;
+            int position = skipPositions[low];
+            int read = low * SKIP_INTERVAL;
+            int number = skipNumbers[low];
+            for (int i = 0; i < count; i++) {
+                final int candidate = candidates[i];
+                while (number < candidate && read < size) {
+                    int gap = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = data[position++];
+                        gap |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    number += gap;
+                    read++;
+                }
+                if (number < candidate)
+                    break;
+                if (number == candidate)
+                    candidates[kept++] = candidate;
+            }
+            return kept;
+        }
+
+        private void trim() {
+            data = Arrays.copyOf(data, length);
+            skipPositions = Arrays.copyOf(skipPositions, Math.max(1, blockCount()));
+            skipNumbers = Arrays.copyOf(skipNumbers, Math.max(1, blockCount()));
+        }
+    }
+}
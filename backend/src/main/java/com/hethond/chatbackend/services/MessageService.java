@@ -4,44 +4,113 @@ import com.hethond.chatbackend.exceptions.ApiException;
 import com.hethond.chatbackend.entities.Channel;
 import com.hethond.chatbackend.entities.Message;
 import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
 import com.hethond.chatbackend.repositories.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class MessageService {
+    private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
     private final MessageRepository messageRepository;
+    private final MessageStore messageStore;
 
     // TODO -- Find out if it might be better to use services here
     private final UserService userService;
     private final ChannelService channelService;
+    private final ChannelHistoryCache channelHistoryCache;
+    private final RedisMessageStream messageStream;
+    private final MessageSearchIndex messageSearchIndex;
+    private final ChannelMembershipIndex channelMembershipIndex;
+    private final UnreadCounterService unreadCounterService;
+    private final Timer persistTimer;
 
     @Autowired
     public MessageService(MessageRepository messageRepository,
+                          MessageStore messageStore,
                           UserService userService,
-                          ChannelService channelService) {
+                          ChannelService channelService,
+                          ChannelHistoryCache channelHistoryCache,
+                          RedisMessageStream messageStream,
+                          MessageSearchIndex messageSearchIndex,
+                          ChannelMembershipIndex channelMembershipIndex,
+                          UnreadCounterService unreadCounterService,
+                          MeterRegistry meterRegistry) {
         this.messageRepository = messageRepository;
+        this.messageStore = messageStore;
         this.userService = userService;
         this.channelService = channelService;
+        this.channelHistoryCache = channelHistoryCache;
+        this.messageStream = messageStream;
+        this.messageSearchIndex = messageSearchIndex;
+        this.channelMembershipIndex = channelMembershipIndex;
+        this.unreadCounterService = unreadCounterService;
+        this.persistTimer = Timer.builder("chat.message.persist")
+                .description("Time until a posted message is committed, including any write-behind wait")
+                .tag("writeBehind", String.valueOf(messageStore.isWriteBehind()))
+                .register(meterRegistry);
     }
 
     public Message createMessage(UUID userId, long channelId, String content) {
         User author = userService.findUserById(userId);
         Channel channel = channelService.findChannelById(channelId);
-        return messageRepository.save(new Message(author, channel, content));
+        return saveMessage(new Message(author, channel, content));
     }
 
+    /**
+     * Saves a message and counts it as unread for the channel's other members.
+     */
     public Message saveMessage(Message message) {
-        return messageRepository.save(message);
+        Message savedMessage = persistTimer.record(() -> messageStore.save(message));
+        countUnread(savedMessage);
+        return savedMessage;
     }
 
+    /**
+     * Saves a message, completing the returned future once it has been committed.
+     * With write-behind enabled the message is committed together with other queued messages.
+     */
+    public CompletableFuture<Message> saveMessageAsync(Message message) {
+        return messageStore.saveAsync(message).thenApply(savedMessage -> {
+            countUnread(savedMessage);
+            return savedMessage;
+        });
+    }
+
+    // Counted once, by the node that stored the message; a failure here must not fail the post.
+    private void countUnread(Message message) {
+        if (!unreadCounterService.isEnabled())
+            return;
+        long channelId = message.getChannel().getId();
+        try {
+            unreadCounterService.countMessage(channelId, message.getAuthor().getId(),
+                    channelMembershipIndex.getMembers(channelId));
+        } catch (RuntimeException e) {
+            logger.error("Failed to count message [{}] as unread in channel [{}].", message.getId(), channelId, e);
+        }
+    }
+
+    // Entity lookups read the messages table, which the segment store leaves empty.
     public Message findMessageById(long id) {
         Optional<Message> message = messageRepository.findById(id);
         return message.orElseThrow(() ->new ApiException(HttpStatus.NOT_FOUND.value(), "Message not found"));
@@ -53,9 +122,62 @@ public class MessageService {
         return messageRepository.findByChannelId(channelId);
     }
 
-    public Page<Message> findMessagesByChannelId(long channelId, Pageable pageable) {
+    public Page<MessageBasicDto> findMessagesByChannelId(long channelId, Pageable pageable) {
         // Check if channel exists
         channelService.findChannelById(channelId);
-        return messageRepository.findByChannelId(channelId, pageable);
+        return messageStore.findByChannelId(channelId, pageable);
+    }
+
+    /**
+     * Returns up to {@code size} messages older than {@code before}, newest first.
+     * A {@code null} cursor starts at the newest message of the channel.
+     * Pages within the channel's cached history, or else its Redis stream, are served without a query.
+     * Pages are at most {@value #MAX_PAGE_SIZE} messages.
+     */
+    public Slice<MessageBasicDto> findMessagesBefore(long channelId, Long before, int requestedSize) {
+        final int size = getPageSize(requestedSize);
+        final Optional<Slice<MessageBasicDto>> cached = channelHistoryCache.findMessagesBefore(channelId, before, size);
+        if (cached.isPresent())
+            return cached.get();
+        final Optional<Slice<MessageBasicDto>> streamed = messageStream.findMessagesBefore(channelId, before, size);
+        if (streamed.isPresent())
+            return streamed.get();
+
+        return messageStore.findBefore(channelId, before != null ? before : Long.MAX_VALUE, size);
+    }
+
+    /**
+     * Returns up to {@code size} messages newer than {@code after}, oldest first.
+     * Pages are at most {@value #MAX_PAGE_SIZE} messages.
+     */
+    public Slice<MessageBasicDto> findMessagesAfter(long channelId, long after, int requestedSize) {
+        final int size = getPageSize(requestedSize);
+        final Optional<Slice<MessageBasicDto>> cached = channelHistoryCache.findMessagesAfter(channelId, after, size);
+        if (cached.isPresent())
+            return cached.get();
+
+        return messageStore.findAfter(channelId, after, size);
+    }
+
+    private static int getPageSize(final int requestedSize) {
+        if (requestedSize <= 0)
+            throw new ApiException(HttpStatus.BAD_REQUEST.value(), "The page size must be positive.");
+        return Math.min(requestedSize, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Returns up to {@code size} messages older than {@code before} that contain every word of the query, newest first.
+     */
+    public Slice<MessageBasicDto> searchMessages(long channelId, String query, Long before, int size) {
+        final int limit = Math.clamp(size, 1, MAX_SEARCH_PAGE_SIZE);
+        final List<Long> ids = messageSearchIndex.search(channelId, query,
+                before != null ? before : Long.MAX_VALUE, limit + 1);
+        final boolean hasNext = ids.size() > limit;
+
+        final List<MessageBasicDto> messages = messageStore.findByIds(channelId, hasNext ? ids.subList(0, limit) : ids)
+                .stream()
+                .sorted(Comparator.comparingLong(MessageBasicDto::getId).reversed())
+                .toList();
+        return new SliceImpl<>(messages, PageRequest.of(0, limit), hasNext);
     }
 }
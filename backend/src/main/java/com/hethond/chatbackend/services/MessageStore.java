@@ -0,0 +1,57 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.entities.dto.MessageTextProjection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Where posted messages are kept and channel history is read from. Selected with the
+ * {@code app.messageStore} property: {@code jpa} for the messages table, {@code segment} for
+ * append-only files (see the {@code segment-store} profile).
+ */
+public interface MessageStore {
+    /**
+     * Assigns the message an id unless it has one, and stores it.
+     */
+    Message save(Message message);
+
+    /**
+     * Like {@link #save}, completing the future once the message has been stored.
+     */
+    CompletableFuture<Message> saveAsync(Message message);
+
+    /**
+     * Whether a save waits to be written together with other messages.
+     */
+    boolean isWriteBehind();
+
+    Page<MessageBasicDto> findByChannelId(long channelId, Pageable pageable);
+
+    /**
+     * Up to {@code size} messages with an id below {@code before}, newest first.
+     */
+    Slice<MessageBasicDto> findBefore(long channelId, long before, int size);
+
+    /**
+     * Up to {@code size} messages with an id above {@code after}, oldest first.
+     */
+    Slice<MessageBasicDto> findAfter(long channelId, long after, int size);
+
+    /**
+     * The channel's messages among {@code ids}, in no particular order.
+     */
+    List<MessageBasicDto> findByIds(long channelId, Collection<Long> ids);
+
+    /**
+     * Passes every stored message to {@code action}, in id order within each channel.
+     */
+    void forEachText(Consumer<MessageTextProjection> action);
+}
@@ -0,0 +1,27 @@
+package com.hethond.chatbackend.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Identifies this process among the nodes sharing Redis. {@code app.nodeId} only keeps generated
+ * message ids apart and is easily left at its default on every node; this id is random per start,
+ * so a node never takes another node's pub/sub messages or presence sessions for its own.
+ */
+@Service
+public class NodeInstance {
+    private static final Logger logger = LoggerFactory.getLogger(NodeInstance.class);
+
+    private final UUID id = UUID.randomUUID();
+
+    public NodeInstance() {
+        logger.info("NodeInstance initialized with instance id {}.", id);
+    }
+
+    public UUID getId() {
+        return id;
+    }
+}
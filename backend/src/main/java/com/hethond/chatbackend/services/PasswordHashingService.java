@@ -0,0 +1,144 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.exceptions.ApiException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs BCrypt on a fixed pool with a bounded queue, so a burst of logins cannot take every request
+ * thread. When the queue is full, callers are turned away with HTTP 503 instead of waiting.
+ * The work factor is calibrated at startup to take roughly the configured target time.
+ */
+@Service
+public class PasswordHashingService implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    private static final int MAX_COST = 16;
+    // Hashes run before calibration is timed, so it measures compiled code rather than the interpreter.
+    private static final int WARMUP_HASHES = 3;
+
+    private final ThreadPoolExecutor executor;
+    private final int cost;
+    private final Timer hashTimer;
+    private final Timer verifyTimer;
+
+    @Autowired
+    public PasswordHashingService(final @Value("${app.passwordHashingThreads:0}") int threadCount,
+                                  final @Value("${app.passwordHashingQueueCapacity:64}") int queueCapacity,
+                                  final @Value("${app.passwordHashTargetMillis:250}") long targetMillis,
+                                  final @Value("${app.passwordHashMinCost:10}") int minCost,
+                                  final MeterRegistry meterRegistry) {
+        final int threads = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.cost = calibrate(minCost, targetMillis);
+
+        this.hashTimer = bcryptTimer("hash", meterRegistry);
+        this.verifyTimer = bcryptTimer("verify", meterRegistry);
+        Gauge.builder("chat.password.queue.depth", executor.getQueue(), BlockingQueue::size)
+                .description("Password hashing tasks waiting for a thread")
+                .register(meterRegistry);
+
+        logger.info("PasswordHashingService initialized with {} threads, a queue of {} and a BCrypt cost of {}.",
+                threads, queueCapacity, cost);
+    }
+
+    public String hash(final String password) {
+        return run(() -> hashTimer.record(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost))));
+    }
+
+    public boolean verify(final String password, final String passwordHash) {
+        return run(() -> verifyTimer.record(() -> BCrypt.checkpw(password, passwordHash)));
+    }
+
+    /**
+     * Whether the hash was made with a lower work factor than the calibrated one. Hashes with a higher
+     * one are kept, so nodes that calibrate to different costs do not rehash each other's logins.
+     */
+    public boolean needsRehash(final String passwordHash) {
+        // BCrypt hashes look like $2a$10$..., with the cost in the third field.
+        try {
+            return Integer.parseInt(passwordHash.substring(4, 6)) < cost;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static Timer bcryptTimer(final String operation, final MeterRegistry meterRegistry) {
+        return Timer.builder("chat.password.bcrypt")
+                .description("Time spent in BCrypt, excluding the wait for a hashing thread")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    private <T> T run(final Callable<T> task) {
+        final Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Password hashing pool is saturated; rejecting request.");
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    "The server is busy. Please try again later.");
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Picks the highest cost, starting at {@code minCost}, whose hash time stays within the target.
+     * Each cost step doubles the time, so the next step is only measured when it is predicted to fit.
+     */
+    private static int calibrate(final int minCost, final long targetMillis) {
+        for (int i = 0; i < WARMUP_HASHES; i++)
+            timeHash(minCost);
+        int cost = minCost;
+        long elapsedMillis = timeHash(cost);
+        while (cost < MAX_COST && elapsedMillis * 2 <= targetMillis) {
+            cost++;
+            elapsedMillis = timeHash(cost);
+        }
+        logger.info("Calibrated BCrypt cost {} at {} ms per hash (target {} ms).", cost, elapsedMillis, targetMillis);
+        return cost;
+    }
+
+    private static long timeHash(final int cost) {
+        final long start = System.nanoTime();
+        BCrypt.hashpw("calibration", BCrypt.gensalt(cost));
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,419 @@
+package com.hethond.chatbackend.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hethond.chatbackend.entities.dto.ChannelMemberProjection;
+import com.hethond.chatbackend.entities.dto.PresenceUpdateDto;
+import com.hethond.chatbackend.repositories.ChannelRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Users with at least one STOMP session on this node, kept from the session connected and
+ * disconnect events. With broker heartbeats enabled ({@code app.stompHeartbeatMillis}) a client
+ * that stops sending heartbeats is disconnected, so it also goes offline here.
+ * <p>
+ * A user coming online or going offline is announced to the online members of each of their
+ * channels on {@code /user/topic/presence}. Changes are collected and sent once per interval, one
+ * update per channel, and a user who is back in their previous state by then is left out, so a
+ * reconnect storm costs a handful of updates rather than one per session per member.
+ * <p>
+ * With the message relay enabled, each session is also added to a Redis set per user whose members
+ * are {@code <instanceId>:<sessionId>}, with the random id of the process ({@link NodeInstance}), so a
+ * user is online while any node has a session of theirs. The node whose add or remove takes the set
+ * from empty to one session or back passes the change to the other nodes for their members; a user
+ * connected to two nodes stays online until both have lost their sessions.
+ * <p>
+ * Each node holds a lease, {@code presence:node:<instanceId>}, which it renews a few times per
+ * {@code app.presenceLeaseMillis}. On every renewal it also checks the leases of the other nodes;
+ * the first node to find one expired, as after a crash, removes that node's sessions and announces its
+ * users offline unless they have sessions elsewhere. A node whose sessions were removed while it was
+ * paused for longer than its lease adds them back on its next renewal.
+ */
+@Service
+public class PresenceRegistry implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(PresenceRegistry.class);
+
+    public static final String PRESENCE_DESTINATION = "/topic/presence";
+    private static final String CHANGES_CHANNEL = "presence:changes";
+    private static final String SESSIONS_PREFIX = "presence:sessions:";
+    private static final String NODES_KEY = "presence:nodes";
+    private static final String NODE_PREFIX = "presence:node:";
+    private static final String USERS_SUFFIX = ":users";
+
+    // Keys are the user's sessions and the node's users; arguments the session, the user id and whether it
+    // is the user's last session on the node. Both return the user's session count across nodes, or -1 if
+    // the session was not there to remove.
+    private static final RedisScript<Long> ADD_SESSION = new DefaultRedisScript<>(
+            "redis.call('SADD', KEYS[2], ARGV[2]) "
+                    + "redis.call('SADD', KEYS[1], ARGV[1]) "
+                    + "return redis.call('SCARD', KEYS[1])", Long.class);
+    private static final RedisScript<Long> REMOVE_SESSION = new DefaultRedisScript<>(
+            "if ARGV[3] == '1' then redis.call('SREM', KEYS[2], ARGV[2]) end "
+                    + "if redis.call('SREM', KEYS[1], ARGV[1]) == 0 then return -1 end "
+                    + "return redis.call('SCARD', KEYS[1])", Long.class);
+    // Keys are the node registry and the node's lease; arguments the node and the lease in milliseconds.
+    // Returns 1 if the node was not registered, as on its first renewal or after it was reaped.
+    private static final RedisScript<Long> RENEW_LEASE = new DefaultRedisScript<>(
+            "redis.call('SET', KEYS[2], '1', 'PX', ARGV[2]) "
+                    + "return redis.call('SADD', KEYS[1], ARGV[1])", Long.class);
+    // Keys are the node registry, the node's lease and its users; arguments the node and the sessions key prefix.
+    // Returns the users left without sessions; none if the lease is live or another node reaped it first.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REAP_NODE = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[2]) == 1 or redis.call('SREM', KEYS[1], ARGV[1]) == 0 then return {} end "
+                    + "local prefix = ARGV[1] .. ':' "
+                    + "local offline = {} "
+                    + "for _, userId in ipairs(redis.call('SMEMBERS', KEYS[3])) do "
+                    + "  local key = ARGV[2] .. userId "
+                    + "  local removed = 0 "
+                    + "  for _, member in ipairs(redis.call('SMEMBERS', key)) do "
+                    + "    if string.sub(member, 1, #prefix) == prefix then removed = removed + redis.call('SREM', key, member) end "
+                    + "  end "
+                    + "  if removed > 0 and redis.call('SCARD', key) == 0 then table.insert(offline, userId) end "
+                    + "end "
+                    + "redis.call('DEL', KEYS[3]) "
+                    + "return offline", List.class);
+    private static final int MEMBERSHIP_BATCH_SIZE = 500;
+
+    // A user's state before the first pending change and after the last one.
+    private record Change(boolean wasOnline, boolean online) {}
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChannelRepository channelRepository;
+    private final ChannelMembershipIndex channelMembershipIndex;
+    private final StringRedisTemplate redisTemplate;
+    private final boolean relayEnabled;
+    private final String instanceId;
+    private final long leaseMillis;
+    // Session ids by user; a user is online while present. Sets are only touched inside compute().
+    private final ConcurrentHashMap<UUID, Set<String>> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Change> pendingChanges = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService broadcastScheduler;
+    private volatile boolean leaseReleased;
+
+    @Autowired
+    public PresenceRegistry(final SimpMessagingTemplate messagingTemplate,
+                            final ObjectMapper objectMapper,
+                            final ChannelRepository channelRepository,
+                            final ChannelMembershipIndex channelMembershipIndex,
+                            final StringRedisTemplate redisTemplate,
+                            final RedisMessageListenerContainer listenerContainer,
+                            final RedisMessageRelay messageRelay,
+                            final NodeInstance nodeInstance,
+                            final @Value("${app.presenceBroadcastIntervalMillis:1000}") long broadcastIntervalMillis,
+                            final @Value("${app.presenceLeaseMillis:30000}") long leaseMillis,
+                            final MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.channelRepository = channelRepository;
+        this.channelMembershipIndex = channelMembershipIndex;
+        this.redisTemplate = redisTemplate;
+        this.relayEnabled = messageRelay.isEnabled() && broadcastIntervalMillis > 0;
+        this.instanceId = nodeInstance.getId().toString();
+        this.leaseMillis = leaseMillis;
+        Gauge.builder("chat.presence.online", sessions, Map::size)
+                .description("Users with at least one STOMP session on this node")
+                .register(meterRegistry);
+
+        if (broadcastIntervalMillis > 0) {
+            broadcastScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("presence-broadcast-"));
+            broadcastScheduler.scheduleWithFixedDelay(this::broadcastChanges,
+                    broadcastIntervalMillis, broadcastIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            broadcastScheduler = null;
+        }
+
+        if (relayEnabled) {
+            // Messages are "<instanceId>:<userId>:<0|1>"; changes made on this node are already pending.
+            listenerContainer.addMessageListener((message, pattern) -> {
+                final String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+                if (!parts[0].equals(this.instanceId))
+                    addChange(UUID.fromString(parts[1]), parts[2].equals("1"));
+            }, new ChannelTopic(CHANGES_CHANNEL));
+            broadcastScheduler.scheduleWithFixedDelay(this::renewLease, 0, getRenewalMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("PresenceRegistry initialized; presence changes are {}.",
+                broadcastScheduler != null ? "broadcast every " + broadcastIntervalMillis + " ms" : "not broadcast");
+    }
+
+    /**
+     * Whether the user has a STOMP session on this node, so frames sent from this node reach them.
+     * Sessions on other nodes are served by those nodes.
+     */
+    public boolean hasLocalSession(final UUID userId) {
+        return sessions.containsKey(userId);
+    }
+
+    /**
+     * Renews this node's lease, adding its sessions back if another node reaped them, and reaps the
+     * nodes whose lease has expired.
+     */
+    private void renewLease() {
+        try {
+            final Long registered = redisTemplate.execute(RENEW_LEASE, List.of(NODES_KEY, NODE_PREFIX + instanceId),
+                    instanceId, String.valueOf(leaseMillis));
+            if (registered != null && registered == 1 && !sessions.isEmpty())
+                restoreSessions();
+
+            final Set<String> instanceIds = redisTemplate.opsForSet().members(NODES_KEY);
+            if (instanceIds == null)
+                return;
+            for (String otherInstanceId : instanceIds) {
+                if (!otherInstanceId.equals(instanceId))
+                    reap(otherInstanceId);
+            }
+        } catch (RuntimeException e) {
+            // Caught broadly, as an exception escaping a scheduled task cancels its later runs.
+            logger.warn("Could not renew the presence lease of this node; it is retried in {} ms.", getRenewalMillis(), e);
+        }
+    }
+
+    private long getRenewalMillis() {
+        return Math.max(1, leaseMillis / 3);
+    }
+
+    /**
+     * Removes the sessions of a node whose lease has expired, announcing the users left without any offline.
+     */
+    @SuppressWarnings("unchecked")
+    private void reap(final String nodeInstanceId) {
+        final List<String> offline = redisTemplate.execute(REAP_NODE,
+                List.of(NODES_KEY, NODE_PREFIX + nodeInstanceId, NODE_PREFIX + nodeInstanceId + USERS_SUFFIX),
+                nodeInstanceId, SESSIONS_PREFIX);
+        if (offline == null || offline.isEmpty())
+            return;
+        for (String userId : offline)
+            changed(UUID.fromString(userId), false);
+        logger.info("Removed the sessions of node [{}], whose presence lease ended; {} users went offline.",
+                nodeInstanceId, offline.size());
+    }
+
+    // The node was reaped while its lease had lapsed, as during a long pause; its users were announced offline.
+    private void restoreSessions() {
+        int restored = 0;
+        for (UUID userId : sessions.keySet()) {
+            for (String sessionId : getLocalSessions(userId)) {
+                final Long count = updateClusterSessions(ADD_SESSION, userId, sessionId, false);
+                if (count != null && count == 1)
+                    changed(userId, true);
+                restored++;
+                // A session that disconnected meanwhile found nothing to remove in Redis.
+                final List<String> remaining = getLocalSessions(userId);
+                if (!remaining.contains(sessionId)) {
+                    final Long left = updateClusterSessions(REMOVE_SESSION, userId, sessionId, remaining.isEmpty());
+                    if (left != null && left == 0)
+                        changed(userId, false);
+                }
+            }
+        }
+        logger.warn("The presence lease of this node had expired; added {} sessions back.", restored);
+    }
+
+    private List<String> getLocalSessions(final UUID userId) {
+        final List<String> sessionIds = new ArrayList<>();
+        sessions.computeIfPresent(userId, (id, userSessions) -> {
+            sessionIds.addAll(userSessions);
+            return userSessions;
+        });
+        return sessionIds;
+    }
+
+    /**
+     * Releases this node's lease on shutdown, while Redis can still be reached, so the other nodes
+     * announce its users offline now rather than when the lease would expire.
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void onContextClosed() throws InterruptedException {
+        if (!relayEnabled)
+            return;
+        // No renewal may register the node again after it is reaped.
+        broadcastScheduler.shutdownNow();
+        broadcastScheduler.awaitTermination(5, TimeUnit.SECONDS);
+        leaseReleased = true;
+        try {
+            redisTemplate.delete(NODE_PREFIX + instanceId);
+            reap(instanceId);
+        } catch (RuntimeException e) {
+            logger.warn("Could not release the presence lease of this node; it expires in {} ms.", leaseMillis, e);
+        }
+    }
+
+    @EventListener
+    public void onSessionConnected(final SessionConnectedEvent event) {
+        final UUID userId = getUserId(event);
+        final String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (userId == null || sessionId == null)
+            return;
+
+        final boolean[] cameOnline = {false};
+        sessions.compute(userId, (id, userSessions) -> {
+            if (userSessions == null) {
+                userSessions = new HashSet<>(2);
+                cameOnline[0] = true;
+            }
+            userSessions.add(sessionId);
+            return userSessions;
+        });
+        final Long count = relayEnabled ? updateClusterSessions(ADD_SESSION, userId, sessionId, false) : null;
+        if (count != null ? count == 1 : cameOnline[0])
+            changed(userId, true);
+    }
+
+    /**
+     * May be called more than once for a session.
+     */
+    @EventListener
+    public void onSessionDisconnect(final SessionDisconnectEvent event) {
+        final UUID userId = getUserId(event);
+        if (userId == null)
+            return;
+
+        final boolean[] removed = {false};
+        final boolean[] wentOffline = {false};
+        sessions.computeIfPresent(userId, (id, userSessions) -> {
+            if (!userSessions.remove(event.getSessionId()))
+                return userSessions;
+            removed[0] = true;
+            if (!userSessions.isEmpty())
+                return userSessions;
+            wentOffline[0] = true;
+            return null;
+        });
+        // Once the lease is released, this node's users have been announced offline to the other nodes.
+        if (!removed[0] || leaseReleased)
+            return;
+
+        final Long count = relayEnabled
+                ? updateClusterSessions(REMOVE_SESSION, userId, event.getSessionId(), wentOffline[0])
+                : null;
+        if (count != null ? count == 0 : wentOffline[0])
+            changed(userId, false);
+    }
+
+    /**
+     * Runs a session script and returns the user's session count across nodes, or null if Redis
+     * could not be reached; the caller then goes by this node's sessions alone.
+     */
+    private Long updateClusterSessions(final RedisScript<Long> script, final UUID userId, final String sessionId,
+                                       final boolean lastLocalSession) {
+        try {
+            return redisTemplate.execute(script, List.of(SESSIONS_PREFIX + userId, NODE_PREFIX + instanceId + USERS_SUFFIX),
+                    instanceId + ":" + sessionId, userId.toString(), lastLocalSession ? "1" : "0");
+        } catch (DataAccessException e) {
+            logger.warn("Could not update the sessions of user [{}] in Redis; presence goes by this node only.", userId, e);
+            return null;
+        }
+    }
+
+    private static UUID getUserId(final AbstractSubProtocolEvent event) {
+        final Principal user = event.getUser();
+        if (user == null)
+            return null;
+        try {
+            return UUID.fromString(user.getName());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void changed(final UUID userId, final boolean online) {
+        if (broadcastScheduler == null)
+            return;
+        addChange(userId, online);
+        if (relayEnabled)
+            redisTemplate.convertAndSend(CHANGES_CHANNEL, instanceId + ":" + userId + ":" + (online ? "1" : "0"));
+    }
+
+    private void addChange(final UUID userId, final boolean online) {
+        pendingChanges.merge(userId, new Change(!online, online), (pending, change) -> new Change(pending.wasOnline(), online));
+    }
+
+    private void broadcastChanges() {
+        try {
+            final Map<UUID, Boolean> changes = new HashMap<>();
+            for (UUID userId : pendingChanges.keySet()) {
+                final Change change = pendingChanges.remove(userId);
+                if (change != null && change.wasOnline() != change.online())
+                    changes.put(userId, change.online());
+            }
+            if (changes.isEmpty())
+                return;
+
+            final Map<Long, PresenceUpdateDto> updates = new HashMap<>();
+            final List<UUID> userIds = new ArrayList<>(changes.keySet());
+            for (int start = 0; start < userIds.size(); start += MEMBERSHIP_BATCH_SIZE) {
+                final List<UUID> batch = userIds.subList(start, Math.min(userIds.size(), start + MEMBERSHIP_BATCH_SIZE));
+                for (ChannelMemberProjection membership : channelRepository.findMembershipsByMemberIdIn(batch)) {
+                    final PresenceUpdateDto update = updates.computeIfAbsent(membership.channelId(),
+                            channelId -> new PresenceUpdateDto(channelId, new ArrayList<>(), new ArrayList<>()));
+                    (changes.get(membership.memberId()) ? update.getOnline() : update.getOffline()).add(membership.memberId());
+                }
+            }
+            for (PresenceUpdateDto update : updates.values())
+                send(update);
+            logger.debug("Broadcast presence changes of {} users to {} channels.", changes.size(), updates.size());
+        } catch (JsonProcessingException | RuntimeException e) {
+            logger.error("Failed to broadcast presence changes.", e);
+        }
+    }
+
+    private void send(final PresenceUpdateDto update) throws JsonProcessingException {
+        final SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        final Message<byte[]> frame = MessageBuilder.createMessage(objectMapper.writeValueAsBytes(update),
+                accessor.getMessageHeaders());
+
+        channelMembershipIndex.getMembers(update.getChannelId()).forEach(memberId -> {
+            if (hasLocalSession(memberId))
+                messagingTemplate.send(messagingTemplate.getUserDestinationPrefix() + memberId + PRESENCE_DESTINATION, frame);
+        });
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (broadcastScheduler == null)
+            return;
+        broadcastScheduler.shutdownNow();
+        broadcastScheduler.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,85 @@
+package com.hethond.chatbackend.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Relays encoded message frames between app nodes over Redis pub/sub, one Redis channel per chat channel.
+ * Each frame carries the instance id of the node that published it, so a node never redelivers its own messages.
+ */
+@Service
+public class RedisMessageRelay {
+    private static final Logger logger = LoggerFactory.getLogger(RedisMessageRelay.class);
+
+    private static final String CHANNEL_PREFIX = "chat:channel:";
+
+    @FunctionalInterface
+    public interface FrameHandler {
+        void handle(long channelId, byte[] payload);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final boolean enabled;
+    private final UUID instanceId;
+
+    @Autowired
+    public RedisMessageRelay(final StringRedisTemplate redisTemplate,
+                             final RedisMessageListenerContainer listenerContainer,
+                             final @Value("${app.messageRelayEnabled:false}") boolean enabled,
+                             final NodeInstance nodeInstance) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.enabled = enabled;
+        this.instanceId = nodeInstance.getId();
+
+        logger.info("RedisMessageRelay initialized; relaying is {}.", enabled ? "enabled" : "disabled");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void publish(final long channelId, final byte[] payload) {
+        final byte[] redisChannel = (CHANNEL_PREFIX + channelId).getBytes(StandardCharsets.UTF_8);
+        final byte[] frame = ByteBuffer.allocate(2 * Long.BYTES + payload.length)
+                .putLong(instanceId.getMostSignificantBits())
+                .putLong(instanceId.getLeastSignificantBits())
+                .put(payload)
+                .array();
+        redisTemplate.execute((RedisCallback<Long>) connection -> publish(connection, redisChannel, frame));
+    }
+
+    /**
+     * Registers a handler for frames published by other nodes.
+     */
+    public void subscribe(final FrameHandler handler) {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            final ByteBuffer frame = ByteBuffer.wrap(message.getBody());
+            if (new UUID(frame.getLong(), frame.getLong()).equals(instanceId))
+                return;
+
+            final String redisChannel = new String(message.getChannel(), StandardCharsets.UTF_8);
+            final long channelId = Long.parseLong(redisChannel.substring(CHANNEL_PREFIX.length()));
+            final byte[] payload = new byte[frame.remaining()];
+            frame.get(payload);
+            handler.handle(channelId, payload);
+        }, new PatternTopic(CHANNEL_PREFIX + "*"));
+    }
+
+    private static Long publish(final RedisConnection connection, final byte[] channel, final byte[] frame) {
+        return connection.publish(channel, frame);
+    }
+}
@@ -0,0 +1,219 @@
+package com.hethond.chatbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Recent messages of every channel in a capped Redis Stream, shared by all app nodes.
+ * <p>
+ * Entries get stream ids from Redis ({@code *}) and carry the message id as a field, so posts
+ * racing in one channel are all kept even when they arrive out of id order. History pages are
+ * read from the newest end with XREVRANGE, a batch at a time, and filtered and ordered by message id.
+ * <p>
+ * A message that could not be appended, or whose fan-out was dropped, is replaced by a gap entry with
+ * its id, and a page that would include it is read from the database instead. Gap entries are trimmed
+ * like messages. When even the gap entry cannot be written, this node stops reading the channel's
+ * stream and deletes it before appending the next newer message, so the stream restarts after the gap.
+ */
+@Service
+public class RedisMessageStream {
+    private static final Logger logger = LoggerFactory.getLogger(RedisMessageStream.class);
+
+    private static final String STREAM_PREFIX = "chat:stream:";
+    private static final byte[] ID_FIELD = "id".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PAYLOAD_FIELD = "m".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GAP_FIELD = "gap".getBytes(StandardCharsets.UTF_8);
+    // Entries read per XREVRANGE; a page is ordered within what was read, which absorbs racing appends.
+    private static final int READ_BATCH_SIZE = 200;
+
+    private record Entry(long messageId, ByteRecord record, boolean gap) {}
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long maxLength;
+    private final Duration ttl;
+    private final Counter appendFailureCounter;
+    // Channels with a gap that could not be marked in the stream, and the newest message id missing from it.
+    private final ConcurrentMap<Long, Long> unmarkedGaps = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RedisMessageStream(final StringRedisTemplate redisTemplate,
+                              final ObjectMapper objectMapper,
+                              final @Value("${app.messageStreamEnabled:false}") boolean enabled,
+                              final @Value("${app.messageStreamMaxLength:1000}") long maxLength,
+                              final @Value("${app.messageStreamTtlHours:168}") long ttlHours,
+                              final MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxLength = maxLength;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.appendFailureCounter = Counter.builder("chat.stream.append.failures")
+                .description("Messages left out of their channel's history stream because the append failed")
+                .register(meterRegistry);
+
+        logger.info("RedisMessageStream initialized; the history stream is {} with about {} messages per channel.",
+                enabled ? "enabled" : "disabled", maxLength);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends a committed message's encoded JSON, trimming the stream to about the configured length.
+     */
+    public void append(final long channelId, final long messageId, final byte[] payload) {
+        final Long unmarkedGap = unmarkedGaps.get(channelId);
+        final boolean restart = unmarkedGap != null && messageId > unmarkedGap;
+        try {
+            add(channelId, messageId, PAYLOAD_FIELD, payload, restart);
+        } catch (DataAccessException e) {
+            logger.warn("Could not append message [{}] to the stream of channel [{}]; marking it missing.",
+                    messageId, channelId, e);
+            appendFailureCounter.increment();
+            markGap(channelId, messageId);
+            return;
+        }
+        if (restart && unmarkedGaps.remove(channelId, unmarkedGap))
+            logger.info("Restarted the stream of channel [{}] after message [{}].", channelId, unmarkedGap);
+    }
+
+    /**
+     * Records that a committed message is missing from its channel's stream, so pages that would
+     * include it are read from the database.
+     */
+    public void markGap(final long channelId, final long messageId) {
+        try {
+            add(channelId, messageId, GAP_FIELD, new byte[0], false);
+        } catch (DataAccessException e) {
+            logger.warn("Could not mark message [{}] missing from the stream of channel [{}]; "
+                    + "the stream is not read here until it restarts.", messageId, channelId, e);
+            unmarkedGaps.merge(channelId, messageId, Math::max);
+        }
+    }
+
+    private void add(final long channelId, final long messageId, final byte[] field, final byte[] value,
+                     final boolean restart) {
+        final byte[] key = getKey(channelId);
+        final ByteRecord record = StreamRecords.rawBytes(Map.of(
+                        ID_FIELD, String.valueOf(messageId).getBytes(StandardCharsets.UTF_8),
+                        field, value))
+                .withStreamKey(key)
+                .withId(RecordId.autoGenerate());
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (restart)
+                connection.keyCommands().del(key);
+            connection.streamCommands().xAdd(record, XAddOptions.maxlen(maxLength).approximateTrimming(true));
+            connection.keyCommands().expire(key, ttl.toSeconds());
+            return null;
+        });
+    }
+
+    /**
+     * Up to {@code size} messages older than {@code before}, newest first, if the stream reaches back that far.
+     * A short read is not served, as the stream may have been trimmed since those messages.
+     */
+    public Optional<Slice<MessageBasicDto>> findMessagesBefore(final long channelId, final Long before, final int size) {
+        if (!enabled || size > maxLength || unmarkedGaps.containsKey(channelId))
+            return Optional.empty();
+
+        final byte[] key = getKey(channelId);
+        final List<Entry> entries = new ArrayList<>();
+        Range<String> range = Range.unbounded();
+        try {
+            // One more entry than the page shows that the stream reaches past it.
+            while (entries.size() <= size) {
+                final Range<String> batchRange = range;
+                final List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                        connection.streamCommands().xRevRange(key, batchRange, Limit.limit().count(READ_BATCH_SIZE)));
+                if (records == null || records.isEmpty())
+                    break;
+                for (ByteRecord record : records) {
+                    final long messageId = Long.parseLong(new String(getField(record, ID_FIELD), StandardCharsets.UTF_8));
+                    if (before == null || messageId < before)
+                        entries.add(new Entry(messageId, record, findField(record, GAP_FIELD) != null));
+                }
+                if (records.size() < READ_BATCH_SIZE)
+                    break;
+                range = Range.of(Range.Bound.unbounded(), Range.Bound.exclusive(records.getLast().getId().getValue()));
+            }
+        } catch (DataAccessException e) {
+            logger.warn("Could not read the stream of channel [{}]; falling back to the database.", channelId, e);
+            return Optional.empty();
+        } catch (IllegalStateException | NumberFormatException e) {
+            logger.warn("Unreadable entry in the stream of channel [{}]; falling back to the database.", channelId, e);
+            return Optional.empty();
+        }
+        if (entries.size() <= size)
+            return Optional.empty();
+
+        entries.sort(Comparator.comparingLong(Entry::messageId).reversed());
+        final List<Entry> page = entries.subList(0, size);
+        if (page.stream().anyMatch(Entry::gap)) {
+            logger.debug("A message on the requested page is missing from the stream of channel [{}].", channelId);
+            return Optional.empty();
+        }
+        final List<MessageBasicDto> messages = new ArrayList<>(size);
+        try {
+            for (Entry entry : page)
+                messages.add(objectMapper.readValue(getField(entry.record(), PAYLOAD_FIELD), MessageBasicDto.class));
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Unreadable entry in the stream of channel [{}]; falling back to the database.", channelId, e);
+            return Optional.empty();
+        }
+        return Optional.of(new SliceImpl<>(messages, PageRequest.of(0, size), true));
+    }
+
+    private static byte[] getField(final ByteRecord record, final byte[] name) {
+        final byte[] value = findField(record, name);
+        if (value != null)
+            return value;
+        throw new IllegalStateException("Stream entry " + record.getId() + " has no field "
+                + new String(name, StandardCharsets.UTF_8) + ".");
+    }
+
+    private static byte[] findField(final ByteRecord record, final byte[] name) {
+        for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+            if (Arrays.equals(field.getKey(), name))
+                return field.getValue();
+        }
+        return null;
+    }
+
+    private static byte[] getKey(final long channelId) {
+        return (STREAM_PREFIX + channelId).getBytes(StandardCharsets.UTF_8);
+    }
+}
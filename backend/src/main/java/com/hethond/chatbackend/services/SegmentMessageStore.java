@@ -0,0 +1,602 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.entities.dto.MessageProjection;
+import com.hethond.chatbackend.entities.dto.MessageTextProjection;
+import com.hethond.chatbackend.exceptions.ApiException;
+import com.hethond.chatbackend.repositories.ChannelRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Messages in append-only segment files, one directory per channel, instead of the messages table.
+ * Users and channels stay in the database. Only one node may use a directory.
+ * <p>
+ * A record is {@code [body length][crc32c][id][author id][username length][username][content]}.
+ * Ids are assigned while holding the channel's lock, so each channel's records are in id order.
+ * Segments are named after their first id and memory-mapped: appends write into the mapping of
+ * the newest segment, which doubles in size as needed up to {@code app.segmentStoreSegmentBytes},
+ * and history is decoded straight from the mappings. The id and offset of every 64th record are
+ * kept in memory as a sparse index, so a page is found with a binary search and a short scan.
+ * Appends hold the channel's lock; each one then publishes the segment's mapping, index and record
+ * count through a volatile field, and reads work on those published views without the lock.
+ * <p>
+ * Appends reach the page cache at once and the disk within {@code app.segmentStoreFlushIntervalMillis}
+ * (0 forces every append). A torn record at the end of a channel's newest segment is dropped when
+ * the channel is opened.
+ */
+@Service
+@ConditionalOnProperty(name = "app.messageStore", havingValue = "segment")
+public class SegmentMessageStore implements MessageStore, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentMessageStore.class);
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final int HEADER_BYTES = 8;
+    // Id, author id and username length.
+    private static final int FIXED_BODY_BYTES = 8 + 16 + 2;
+    private static final int INDEX_INTERVAL = 64;
+    private static final int INITIAL_MAPPING_BYTES = 64 * 1024;
+    private static final int MIN_SEGMENT_BYTES = 1024 * 1024;
+
+    private final ChannelRepository channelRepository;
+    private final UserService userService;
+    private final MessageIdGenerator messageIdGenerator;
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean forceEachAppend;
+    private final ScheduledExecutorService flushScheduler;
+    private final ConcurrentHashMap<Long, ChannelLog> logs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SegmentMessageStore(final ChannelRepository channelRepository,
+                               final UserService userService,
+                               final MessageIdGenerator messageIdGenerator,
+                               final @Value("${app.segmentStoreDirectory:data/segments}") Path directory,
+                               final @Value("${app.segmentStoreSegmentBytes:67108864}") int segmentBytes,
+                               final @Value("${app.segmentStoreFlushIntervalMillis:1000}") long flushIntervalMillis)
+            throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES)
+            throw new IllegalArgumentException("app.segmentStoreSegmentBytes must be at least " + MIN_SEGMENT_BYTES
+                    + ", got " + segmentBytes + ".");
+        this.channelRepository = channelRepository;
+        this.userService = userService;
+        this.messageIdGenerator = messageIdGenerator;
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.forceEachAppend = flushIntervalMillis <= 0;
+
+        if (forceEachAppend) {
+            flushScheduler = null;
+        } else {
+            flushScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("segment-flush-"));
+            flushScheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("SegmentMessageStore initialized in {} with segments of up to {} bytes, flushed {}.",
+                directory.toAbsolutePath(), segmentBytes,
+                forceEachAppend ? "on every append" : "every " + flushIntervalMillis + " ms");
+    }
+
+    @Override
+    public Message save(final Message message) {
+        final long channelId = message.getChannel().getId();
+        final UUID authorId = message.getAuthor().getId();
+        // The author is usually a lazy reference; the cached principal has the username.
+        final String username = userService.findAuthenticatedUserById(authorId).username();
+        getLog(channelId).append(message, authorId, username);
+        return message;
+    }
+
+    @Override
+    public CompletableFuture<Message> saveAsync(final Message message) {
+        return CompletableFuture.completedFuture(save(message));
+    }
+
+    @Override
+    public boolean isWriteBehind() {
+        return false;
+    }
+
+    @Override
+    public Page<MessageBasicDto> findByChannelId(final long channelId, final Pageable pageable) {
+        for (Sort.Order order : pageable.getSort()) {
+            if (!order.getProperty().equals("id"))
+                throw new ApiException(HttpStatus.BAD_REQUEST.value(), "Messages can only be sorted by id.");
+        }
+        final Sort.Order idOrder = pageable.getSort().getOrderFor("id");
+        final boolean descending = idOrder != null && idOrder.isDescending();
+
+        final ChannelLog log = findLog(channelId);
+        if (log == null)
+            return Page.empty(pageable);
+        final Snapshot snapshot = log.snapshot();
+        final int total = snapshot.size();
+        final int offset = (int) Math.min(pageable.getOffset(), total);
+        final int size = Math.min(pageable.getPageSize(), total - offset);
+        final List<MessageBasicDto> messages = descending
+                ? snapshot.read(total - offset - size, total - offset).reversed()
+                : snapshot.read(offset, offset + size);
+        return new PageImpl<>(messages, pageable, total);
+    }
+
+    @Override
+    public Slice<MessageBasicDto> findBefore(final long channelId, final long before, final int size) {
+        final ChannelLog log = findLog(channelId);
+        if (log == null)
+            return new SliceImpl<>(List.of(), PageRequest.of(0, size), false);
+        final Snapshot snapshot = log.snapshot();
+        final int end = snapshot.countBelow(before);
+        final int start = Math.max(0, end - size);
+        return new SliceImpl<>(snapshot.read(start, end).reversed(), PageRequest.of(0, size), start > 0);
+    }
+
+    @Override
+    public Slice<MessageBasicDto> findAfter(final long channelId, final long after, final int size) {
+        final ChannelLog log = findLog(channelId);
+        if (log == null || after == Long.MAX_VALUE)
+            return new SliceImpl<>(List.of(), PageRequest.of(0, size), false);
+        final Snapshot snapshot = log.snapshot();
+        final int start = snapshot.countBelow(after + 1);
+        final int end = Math.min(snapshot.size(), start + size);
+        return new SliceImpl<>(snapshot.read(start, end), PageRequest.of(0, size), end < snapshot.size());
+    }
+
+    @Override
+    public List<MessageBasicDto> findByIds(final long channelId, final Collection<Long> ids) {
+        final ChannelLog log = findLog(channelId);
+        if (log == null)
+            return List.of();
+        final Snapshot snapshot = log.snapshot();
+        final List<MessageBasicDto> messages = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            final int position = snapshot.countBelow(id);
+            if (position == snapshot.size())
+                continue;
+            final MessageBasicDto message = snapshot.read(position, position + 1).getFirst();
+            if (message.getId() == id)
+                messages.add(message);
+        }
+        return messages;
+    }
+
+    @Override
+    public void forEachText(final Consumer<MessageTextProjection> action) {
+        final List<Long> channelIds;
+        try (Stream<Path> channelDirectories = Files.list(directory)) {
+            channelIds = channelDirectories
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + directory + ".", e);
+        }
+        for (long channelId : channelIds)
+            getLog(channelId).forEachText(action);
+    }
+
+    private ChannelLog getLog(final long channelId) {
+        return logs.computeIfAbsent(channelId, this::openLog);
+    }
+
+    // Reads do not create logs for channels without messages.
+    private ChannelLog findLog(final long channelId) {
+        final ChannelLog log = logs.get(channelId);
+        if (log != null || !Files.isDirectory(getChannelDirectory(channelId)))
+            return log;
+        return getLog(channelId);
+    }
+
+    private ChannelLog openLog(final long channelId) {
+        final String channelName = channelRepository.findById(channelId).map(Channel::getName).orElse(null);
+        final ChannelLog log = new ChannelLog(channelId, channelName, getChannelDirectory(channelId));
+        try {
+            log.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the segments of channel [" + channelId + "].", e);
+        }
+        return log;
+    }
+
+    private Path getChannelDirectory(final long channelId) {
+        return directory.resolve(String.valueOf(channelId));
+    }
+
+    private void flush() {
+        for (ChannelLog log : logs.values()) {
+            try {
+                log.force();
+            } catch (RuntimeException e) {
+                logger.error("Could not flush the segments of channel [{}].", log.channelId, e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (flushScheduler != null) {
+            flushScheduler.shutdown();
+            flushScheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        for (ChannelLog log : logs.values())
+            log.close();
+    }
+
+    /**
+     * The segments of one channel, oldest first. Positions are record numbers across all of them.
+     * The list is replaced rather than changed, so a reader can take it without the lock.
+     */
+    private final class ChannelLog {
+        private final long channelId;
+        private final String channelName;
+        private final Path channelDirectory;
+        private volatile List<Segment> segments = List.of();
+
+        private ChannelLog(final long channelId, final String channelName, final Path channelDirectory) {
+            this.channelId = channelId;
+            this.channelName = channelName;
+            this.channelDirectory = channelDirectory;
+        }
+
+        private synchronized void open() throws IOException {
+            if (!Files.isDirectory(channelDirectory))
+                return;
+            final List<Path> paths;
+            try (Stream<Path> files = Files.list(channelDirectory)) {
+                // Zero-padded first ids, so names sort like the ids.
+                paths = files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+            }
+            final List<Segment> opened = new ArrayList<>(paths.size());
+            for (int i = 0; i < paths.size(); i++)
+                opened.add(Segment.open(paths.get(i), i == paths.size() - 1));
+            segments = List.copyOf(opened);
+            logger.debug("Opened {} segments with {} messages of channel [{}].",
+                    opened.size(), snapshot().size(), channelId);
+        }
+
+        private synchronized void append(final Message message, final UUID authorId, final String username) {
+            if (message.getId() == 0)
+                message.setId(messageIdGenerator.nextId());
+            final long id = message.getId();
+            final List<Segment> current = segments;
+            if (!current.isEmpty() && id <= current.getLast().lastId)
+                throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                        "The server clock is behind the newest message. Please try again later.");
+
+            final byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+            final byte[] contentBytes = message.getContent() != null
+                    ? message.getContent().getBytes(StandardCharsets.UTF_8)
+                    : new byte[0];
+            final int recordBytes = HEADER_BYTES + FIXED_BODY_BYTES + usernameBytes.length + contentBytes.length;
+            if (recordBytes > segmentBytes || usernameBytes.length > 0xFFFF)
+                throw new ApiException(HttpStatus.BAD_REQUEST.value(), "The message is too long.");
+
+            try {
+                if (current.isEmpty() || !current.getLast().append(id, authorId, usernameBytes, contentBytes, segmentBytes)) {
+                    if (!current.isEmpty())
+                        current.getLast().seal();
+                    Files.createDirectories(channelDirectory);
+                    final Segment segment = Segment.create(channelDirectory.resolve(String.format("%020d", id) + SEGMENT_SUFFIX));
+                    segment.append(id, authorId, usernameBytes, contentBytes, segmentBytes);
+                    final List<Segment> grown = new ArrayList<>(current);
+                    grown.add(segment);
+                    segments = List.copyOf(grown);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not append message [" + id + "] to channel [" + channelId + "].", e);
+            }
+            if (forceEachAppend)
+                segments.getLast().force();
+        }
+
+        private Snapshot snapshot() {
+            final List<Segment> current = segments;
+            final List<SegmentView> views = new ArrayList<>(current.size());
+            int size = 0;
+            for (Segment segment : current) {
+                final SegmentView view = segment.view;
+                views.add(view);
+                size += view.count();
+            }
+            return new Snapshot(channelId, channelName, views, size);
+        }
+
+        private void forEachText(final Consumer<MessageTextProjection> action) {
+            for (SegmentView segment : snapshot().segments())
+                segment.read(0, segment.count(), (id, authorId, username, content) ->
+                        action.accept(new MessageTextProjection(id, channelId, content)));
+        }
+
+        private synchronized void force() {
+            if (!segments.isEmpty())
+                segments.getLast().force();
+        }
+
+        private synchronized void close() {
+            for (Segment segment : segments)
+                segment.seal();
+            segments = List.of();
+        }
+    }
+
+    /**
+     * The records of a channel as published when the snapshot was taken.
+     */
+    private record Snapshot(long channelId, String channelName, List<SegmentView> segments, int size) {
+        /**
+         * The number of records with an id below {@code id}, which is also the position of the first one at or above it.
+         */
+        private int countBelow(final long id) {
+            int count = 0;
+            for (SegmentView segment : segments) {
+                if (segment.lastId() < id) {
+                    count += segment.count();
+                } else {
+                    count += segment.countBelow(id);
+                    break;
+                }
+            }
+            return count;
+        }
+
+        private List<MessageBasicDto> read(final int start, final int end) {
+            final List<MessageBasicDto> messages = new ArrayList<>(Math.max(0, end - start));
+            int segmentStart = 0;
+            for (SegmentView segment : segments) {
+                final int segmentEnd = segmentStart + segment.count();
+                if (segmentEnd > start && segmentStart < end) {
+                    segment.read(Math.max(start, segmentStart) - segmentStart, Math.min(end, segmentEnd) - segmentStart,
+                            (id, authorId, username, content) -> messages.add(MessageBasicDto.fromProjection(
+                                    new MessageProjection(id, content, authorId, username, channelId, channelName))));
+                }
+                if (segmentEnd >= end)
+                    break;
+                segmentStart = segmentEnd;
+            }
+            return messages;
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(long id, UUID authorId, String username, String content);
+    }
+
+    /**
+     * One memory-mapped segment file. Only the newest segment of a channel keeps its file open to
+     * grow the mapping; older ones are read from their mapping alone. The fields other than
+     * {@code view} belong to the appending thread.
+     */
+    private static final class Segment {
+        private final Path path;
+        private FileChannel file;
+        private MappedByteBuffer buffer;
+        private int end;
+        private int count;
+        private long lastId = Long.MIN_VALUE;
+        private boolean dirty;
+
+        // Id and offset of records 0, INDEX_INTERVAL, 2 * INDEX_INTERVAL, ...
+        // Entries are only written past the published count, and a grown array is a copy.
+        private long[] indexIds = new long[16];
+        private int[] indexPositions = new int[16];
+
+        private volatile SegmentView view;
+
+        private Segment(final Path path) {
+            this.path = path;
+        }
+
+        private static Segment create(final Path path) throws IOException {
+            final Segment segment = new Segment(path);
+            segment.file = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment.buffer = segment.file.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_MAPPING_BYTES);
+            segment.publish();
+            return segment;
+        }
+
+        private static Segment open(final Path path, final boolean writable) throws IOException {
+            final Segment segment = new Segment(path);
+            final FileChannel file = writable
+                    ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ);
+            final long length = file.size();
+            segment.buffer = file.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, writable ? Math.max(length, INITIAL_MAPPING_BYTES) : length);
+            if (writable)
+                segment.file = file;
+            else
+                file.close();
+            segment.recover(writable);
+            segment.publish();
+            return segment;
+        }
+
+        /**
+         * Indexes the valid records from the start and ends the segment at the first invalid one.
+         */
+        private void recover(final boolean writable) {
+            final CRC32C crc = new CRC32C();
+            int position = 0;
+            while (position + HEADER_BYTES + FIXED_BODY_BYTES <= buffer.capacity()) {
+                final int length = buffer.getInt(position);
+                if (length < FIXED_BODY_BYTES || position + HEADER_BYTES + length > buffer.capacity())
+                    break;
+                crc.reset();
+                crc.update(buffer.slice(position + HEADER_BYTES, length));
+                final long id = buffer.getLong(position + HEADER_BYTES);
+                if ((int) crc.getValue() != buffer.getInt(position + 4) || id <= lastId)
+                    break;
+                addToIndex(id, position);
+                position += HEADER_BYTES + length;
+            }
+            end = position;
+
+            if (end + 4 <= buffer.capacity() && buffer.getInt(end) != 0) {
+                logger.warn("Dropping a torn or invalid record at offset {} of {}.", end, path);
+                if (writable) {
+                    // Zeroed, so the records written next are not followed by leftovers that look valid.
+                    for (int i = end; i < buffer.capacity(); i++)
+                        buffer.put(i, (byte) 0);
+                    dirty = true;
+                }
+            }
+        }
+
+        private boolean append(final long id, final UUID authorId, final byte[] username, final byte[] content,
+                               final int maxBytes) throws IOException {
+            final int length = FIXED_BODY_BYTES + username.length + content.length;
+            final int required = end + HEADER_BYTES + length;
+            if (required > buffer.capacity()) {
+                if (required > maxBytes)
+                    return false;
+                // Readers of the old mapping still see the same file pages.
+                buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(maxBytes, Math.max(required, 2 * buffer.capacity())));
+            }
+
+            final int body = end + HEADER_BYTES;
+            buffer.putLong(body, id);
+            buffer.putLong(body + 8, authorId.getMostSignificantBits());
+            buffer.putLong(body + 16, authorId.getLeastSignificantBits());
+            buffer.putShort(body + 24, (short) username.length);
+            buffer.put(body + FIXED_BODY_BYTES, username);
+            buffer.put(body + FIXED_BODY_BYTES + username.length, content);
+            final CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(body, length));
+            buffer.putInt(end + 4, (int) crc.getValue());
+            // The length goes last; until it is written the record reads as the end of the segment.
+            buffer.putInt(end, length);
+
+            addToIndex(id, end);
+            end = required;
+            dirty = true;
+            publish();
+            return true;
+        }
+
+        private void addToIndex(final long id, final int position) {
+            if (count % INDEX_INTERVAL == 0) {
+                final int entry = count / INDEX_INTERVAL;
+                if (entry == indexIds.length) {
+                    indexIds = Arrays.copyOf(indexIds, 2 * entry);
+                    indexPositions = Arrays.copyOf(indexPositions, 2 * entry);
+                }
+                indexIds[entry] = id;
+                indexPositions[entry] = position;
+            }
+            count++;
+            lastId = id;
+        }
+
+        // The volatile write makes everything written before it visible to readers of the view.
+        private void publish() {
+            view = new SegmentView(buffer, indexIds, indexPositions, count, lastId);
+        }
+
+        private void force() {
+            if (dirty) {
+                buffer.force();
+                dirty = false;
+            }
+        }
+
+        /**
+         * Forces the segment and closes its file; it stays readable through its mapping.
+         */
+        private void seal() {
+            force();
+            if (file == null)
+                return;
+            try {
+                file.close();
+            } catch (IOException e) {
+                logger.warn("Could not close {}.", path, e);
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * The first {@code count} records of a segment as published after an append. Reads use absolute
+     * offsets only, so any number of readers can share the mapping with the appending thread.
+     */
+    private record SegmentView(MappedByteBuffer buffer, long[] indexIds, int[] indexPositions, int count, long lastId) {
+        private int countBelow(final long id) {
+            final int entries = (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+            // The last index entry with a lower id; the answer lies within the interval that follows it.
+            final int found = Arrays.binarySearch(indexIds, 0, entries, id);
+            final int entry = (found >= 0 ? found : -found - 1) - 1;
+            if (entry < 0)
+                return 0;
+
+            int number = entry * INDEX_INTERVAL;
+            int position = indexPositions[entry];
+            while (number < count && buffer.getLong(position + HEADER_BYTES) < id) {
+                position += HEADER_BYTES + buffer.getInt(position);
+                number++;
+            }
+            return number;
+        }
+
+        private void read(final int start, final int end, final RecordVisitor visitor) {
+            int number = start - start % INDEX_INTERVAL;
+            int position = indexPositions[start / INDEX_INTERVAL];
+            for (; number < end; number++) {
+                final int length = buffer.getInt(position);
+                if (number >= start) {
+                    final int body = position + HEADER_BYTES;
+                    final int usernameLength = buffer.getShort(body + 24) & 0xFFFF;
+                    visitor.visit(buffer.getLong(body),
+                            new UUID(buffer.getLong(body + 8), buffer.getLong(body + 16)),
+                            getString(body + FIXED_BODY_BYTES, usernameLength),
+                            getString(body + FIXED_BODY_BYTES + usernameLength, length - FIXED_BODY_BYTES - usernameLength));
+                }
+                position += HEADER_BYTES + length;
+            }
+        }
+
+        private String getString(final int position, final int length) {
+            final byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package com.hethond.chatbackend.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.hethond.chatbackend.exceptions.SessionNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -16,15 +25,38 @@ import java.util.concurrent.TimeUnit;
 public class SessionService {
     private static final Logger logger = LoggerFactory.getLogger(SessionService.class);
     private static final long SESSION_LIFESPAN_MIN = 15;
+    private static final String INVALIDATION_CHANNEL = "session:invalidations";
 
     private final SecureRandom randomGenerator = new SecureRandom();
     private final StringRedisTemplate redisTemplate;
 
+    // Token -> user id, so most lookups skip Redis. Entries expire well before the session itself,
+    // and invalidations from any node arrive through INVALIDATION_CHANNEL.
+    private final Cache<String, UUID> nearCache;
+
     @Autowired
-    public SessionService(final StringRedisTemplate redisTemplate) {
+    public SessionService(final StringRedisTemplate redisTemplate,
+                          final RedisMessageListenerContainer listenerContainer,
+                          final MeterRegistry meterRegistry,
+                          final @Value("${app.sessionNearCacheSize:100000}") long nearCacheSize,
+                          final @Value("${app.sessionNearCacheTtlSeconds:60}") long nearCacheTtlSeconds) {
         this.redisTemplate = redisTemplate;
 
-        logger.info("SessionService initialized with a session lifespan of {} minutes.", SESSION_LIFESPAN_MIN);
+        final long maxTtlSeconds = TimeUnit.MINUTES.toSeconds(SESSION_LIFESPAN_MIN) - 60;
+        final long ttlSeconds = Math.min(nearCacheTtlSeconds, maxTtlSeconds);
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nearCache, "sessionNearCache");
+
+        listenerContainer.addMessageListener(
+                (message, pattern) -> nearCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+
+        logger.info("SessionService initialized with a session lifespan of {} minutes and a near-cache TTL of {} seconds.",
+                SESSION_LIFESPAN_MIN, ttlSeconds);
     }
 
     public String createSession(final UUID userId) {
@@ -43,6 +75,17 @@ public class SessionService {
     }
 
     public UUID getUserIdBySession(final String token) {
+        return nearCache.get(token, this::loadUserIdBySession);
+    }
+
+    public void invalidateSession(final String token) {
+        redisTemplate.delete(getRedisKey(token));
+        nearCache.invalidate(token);
+        redisTemplate.convertAndSend(INVALIDATION_CHANNEL, token);
+        logger.debug("Invalidated session with token [{}]", token);
+    }
+
+    private UUID loadUserIdBySession(final String token) {
         final String uuid = redisTemplate.opsForValue().get(getRedisKey(token));
         if (uuid == null) {
             logger.warn("Attempted to retrieve session with token [{}] but it was not found or expired.", token);
@@ -0,0 +1,11 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.exceptions.SmsSubmissionException;
+
+/**
+ * Submits a single SMS to a provider. Selected with the {@code app.smsSender} property.
+ * A failure that a retry cannot fix is reported as an {@link com.hethond.chatbackend.exceptions.SmsRejectedException}.
+ */
+public interface SmsSender {
+    void send(String author, String recipient, String content) throws SmsSubmissionException;
+}
@@ -1,54 +1,124 @@
 package com.hethond.chatbackend.services;
 
+import com.hethond.chatbackend.exceptions.SmsRejectedException;
 import com.hethond.chatbackend.exceptions.SmsSubmissionException;
-import com.vonage.client.VonageClient;
-import com.vonage.client.sms.MessageStatus;
-import com.vonage.client.sms.SmsSubmissionResponse;
-import com.vonage.client.sms.SmsSubmissionResponseMessage;
-import com.vonage.client.sms.messages.TextMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound SMS queue. Messages are sent by a small worker pool, limited to the provider's rate,
+ * and retried with exponential backoff when sending fails. A message the provider rejects for good
+ * is dropped at once, so it does not spend rate-limit slots other messages need.
+ */
 @Service
-public class SmsService {
+public class SmsService implements DisposableBean {
     private static final Logger logger = LoggerFactory.getLogger(SmsService.class);
 
-    private final VonageClient vonageClient;
+    private record OutboundSms(String author, String recipient, String content, int attempt) {}
+
+    private final SmsSender smsSender;
+    private final BlockingQueue<OutboundSms> queue;
+    private final TokenBucket rateLimiter;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryScheduler;
+    private final Counter rejectedCounter;
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
 
     @Autowired
-    public SmsService(final @Value("${app.vonageKey}") String vonageKey,
-                      final @Value("${app.vonageSecret}") String vonageSecret) {
-        this.vonageClient = VonageClient.builder()
-                .apiKey(vonageKey)
-                .apiSecret(vonageSecret)
-                .build();
-
-        logger.info("SmsService initialized successfully.");
+    public SmsService(final SmsSender smsSender,
+                      final @Value("${app.smsQueueCapacity:1000}") int queueCapacity,
+                      final @Value("${app.smsWorkers:2}") int workerCount,
+                      final @Value("${app.smsRatePerSecond:30}") double ratePerSecond,
+                      final @Value("${app.smsMaxAttempts:5}") int maxAttempts,
+                      final @Value("${app.smsInitialBackoffMillis:1000}") long initialBackoffMillis,
+                      final MeterRegistry meterRegistry) {
+        this.smsSender = smsSender;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.rateLimiter = new TokenBucket(ratePerSecond, ratePerSecond);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.rejectedCounter = Counter.builder("chat.sms.rejected")
+                .description("SMS the provider rejected for good, without retrying")
+                .register(meterRegistry);
+
+        this.workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("sms-worker-"));
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::runWorker);
+        }
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("sms-retry-"));
+
+        logger.info("SmsService initialized with {} workers at up to {} messages per second.", workerCount, ratePerSecond);
     }
 
+    /**
+     * Queues an SMS and returns immediately.
+     *
+     * @throws SmsSubmissionException when the queue is full
+     */
     public void sendMessage(final String author,
                             final String recipient,
                             final String content) throws SmsSubmissionException {
-        final TextMessage textMessage = new TextMessage(author, recipient, content, false);
+        if (!queue.offer(new OutboundSms(author, recipient, content, 0))) {
+            logger.error("SMS queue is full; could not queue message from {} to {}", author, recipient);
+            throw new SmsSubmissionException("SMS queue is full.");
+        }
+    }
 
-        final SmsSubmissionResponse response;
+    private void runWorker() {
         try {
-            response = vonageClient.getSmsClient().submitMessage(textMessage);
-        } catch (RuntimeException e) {
-            logger.error("Failed to send sms message due to Vonage API error.");
-            throw new SmsSubmissionException("Vonage API error: " + e.getMessage());
+            while (!Thread.currentThread().isInterrupted()) {
+                final OutboundSms sms = queue.take();
+                rateLimiter.acquire();
+                try {
+                    smsSender.send(sms.author(), sms.recipient(), sms.content());
+                } catch (SmsRejectedException e) {
+                    rejectedCounter.increment();
+                    logger.error("SMS from {} to {} was rejected; not retrying: {}", sms.author(), sms.recipient(), e.getMessage());
+                } catch (RuntimeException e) {
+                    retry(sms, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        final SmsSubmissionResponseMessage responseMessage = response.getMessages().getFirst();
-        if (responseMessage.getStatus() != MessageStatus.OK) {
-            final String errorMessage = responseMessage.getErrorText();
-            logger.error("Failed to send SMS from {} to {}: {}", author, recipient, errorMessage);
-            throw new SmsSubmissionException(errorMessage);
+    private void retry(final OutboundSms sms, final Exception cause) {
+        final int attempt = sms.attempt() + 1;
+        if (attempt >= maxAttempts) {
+            logger.error("Giving up on SMS from {} to {} after {} attempts: {}",
+                    sms.author(), sms.recipient(), attempt, cause.getMessage());
+            return;
         }
 
-        logger.info("SMS sent successfully from {} to {}", author, recipient);
+        final long backoffMillis = initialBackoffMillis << (attempt - 1);
+        logger.warn("SMS from {} to {} failed (attempt {}); retrying in {} ms: {}",
+                sms.author(), sms.recipient(), attempt, backoffMillis, cause.getMessage());
+        retryScheduler.schedule(() -> {
+            if (!queue.offer(new OutboundSms(sms.author(), sms.recipient(), sms.content(), attempt)))
+                logger.error("SMS queue is full; dropping retry of message from {} to {}", sms.author(), sms.recipient());
+        }, backoffMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        retryScheduler.shutdownNow();
+        workers.shutdownNow();
     }
 }
@@ -0,0 +1,285 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.dto.ChannelReadState;
+import com.hethond.chatbackend.exceptions.ApiException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Per-user unread message counts and read markers, kept in two Redis hashes per user keyed by channel id.
+ * <p>
+ * Saving a message queues one increment for the channel's members other than the author, and
+ * marking a channel read queues a reset. A single writer thread applies the queue in order, adding
+ * up the increments of a batch per user and channel, and writes them as pipelined {@code HINCRBY}s.
+ * Only the node a message was posted on counts it. A message that is still queued when its reader
+ * marks the channel read is counted as read if it was queued first and as unread otherwise.
+ */
+@Service
+public class UnreadCounterService implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    private static final String UNREAD_PREFIX = "chat:unread:";
+    private static final String READ_PREFIX = "chat:read:";
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final int MAX_PIPELINE_COMMANDS = 1_000;
+
+    sealed interface Update permits Increment, MarkRead {}
+
+    record Increment(long channelId, UUID authorId, ChannelMembershipIndex.MemberIdSet members) implements Update {}
+
+    record MarkRead(long channelId, UUID userId, long messageId, CompletableFuture<ChannelReadState> result)
+            implements Update {}
+
+    private record Key(UUID userId, long channelId) {}
+
+    // What a batch does to one user's state in one channel: an optional reset, then an increment.
+    private static final class PendingChange {
+        private long increment;
+        private MarkRead markRead;
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final long maxBatchDelayNanos;
+    private final long markReadTimeoutMillis;
+    private final BlockingQueue<Update> queue;
+    private final Counter droppedCounter;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    @Autowired
+    public UnreadCounterService(final StringRedisTemplate redisTemplate,
+                                final @Value("${app.unreadCountersEnabled:false}") boolean enabled,
+                                final @Value("${app.unreadCounterQueueCapacity:10000}") int queueCapacity,
+                                final @Value("${app.unreadCounterBatchDelayMillis:20}") long maxBatchDelayMillis,
+                                final @Value("${app.unreadMarkReadTimeoutMillis:2000}") long markReadTimeoutMillis,
+                                final MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.markReadTimeoutMillis = markReadTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.droppedCounter = Counter.builder("chat.unread.dropped")
+                .description("Messages not counted as unread because the counter queue was full")
+                .register(meterRegistry);
+
+        if (enabled) {
+            running = true;
+            writerThread = new Thread(this::runWriter, "unread-counter-writer");
+            writerThread.start();
+        }
+
+        logger.info("UnreadCounterService initialized; unread counters are {}.", enabled ? "enabled" : "disabled");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts a posted message as unread for every member but its author. Never blocks; the message
+     * is not counted if the queue is full.
+     */
+    public void countMessage(final long channelId, final UUID authorId, final ChannelMembershipIndex.MemberIdSet members) {
+        if (!running)
+            return;
+        if (!queue.offer(new Increment(channelId, authorId, members))) {
+            logger.debug("Unread counter queue is full; message in channel [{}] is not counted.", channelId);
+            droppedCounter.increment();
+        }
+    }
+
+    /**
+     * Marks every message of the channel posted so far as read by the user and resets its unread count.
+     * Answers 503 if the reset is not written within {@code app.unreadMarkReadTimeoutMillis}; it may still be applied later.
+     */
+    public ChannelReadState markRead(final long channelId, final UUID userId) {
+        if (!running)
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE.value(), "Unread counters are disabled.");
+
+        // The highest id a message generated up to now can have.
+        final long messageId = MessageIdGenerator.getMinIdAt(System.currentTimeMillis() + 1) - 1;
+        final MarkRead markRead = new MarkRead(channelId, userId, messageId, new CompletableFuture<>());
+        if (!queue.offer(markRead)) {
+            logger.warn("Unread counter queue is full; rejecting read marker.");
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    "The server is busy. Please try again later.");
+        }
+        try {
+            return markRead.result().orTimeout(markReadTimeoutMillis, TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                logger.warn("Read marker of user [{}] in channel [{}] was not written within {} ms.",
+                        userId, channelId, markReadTimeoutMillis);
+                throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                        "The server is busy. Please try again later.");
+            }
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * The user's read state in every channel that has one, by channel id. Empty if Redis cannot be read.
+     */
+    public Map<Long, ChannelReadState> getReadStates(final UUID userId) {
+        if (!enabled)
+            return Map.of();
+
+        final List<Object> hashes;
+        try {
+            hashes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.hashCommands().hGetAll(getKey(UNREAD_PREFIX, userId));
+                connection.hashCommands().hGetAll(getKey(READ_PREFIX, userId));
+                return null;
+            });
+        } catch (DataAccessException e) {
+            logger.warn("Could not read the unread counters of user [{}].", userId, e);
+            return Map.of();
+        }
+
+        final Map<Long, ChannelReadState> readStates = new HashMap<>();
+        toLongs(hashes.get(0)).forEach((channelId, count) ->
+                readStates.put(channelId, new ChannelReadState(Math.max(0, count), null)));
+        toLongs(hashes.get(1)).forEach((channelId, messageId) -> readStates.merge(channelId,
+                new ChannelReadState(0, messageId),
+                (unread, read) -> new ChannelReadState(unread.unreadCount(), messageId)));
+        return readStates;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, Long> toLongs(final Object hash) {
+        final Map<Long, Long> values = new HashMap<>();
+        ((Map<String, String>) hash).forEach((field, value) -> values.put(Long.parseLong(field), Long.parseLong(value)));
+        return values;
+    }
+
+    private void runWriter() {
+        final List<Update> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                final Update first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+
+                // Gather until the batch is full or the oldest update has waited long enough.
+                final long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    if (queue.drainTo(batch, MAX_BATCH_SIZE - batch.size()) > 0)
+                        continue;
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        break;
+                    final Update next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    void writeBatch(final List<Update> batch) {
+        final Map<Key, PendingChange> changes = new LinkedHashMap<>();
+        for (Update update : batch) {
+            switch (update) {
+                case Increment increment -> increment.members().forEach(memberId -> {
+                    if (!memberId.equals(increment.authorId()))
+                        changes.computeIfAbsent(new Key(memberId, increment.channelId()), key -> new PendingChange()).increment++;
+                });
+                case MarkRead markRead -> {
+                    // A reset drops the increments queued before it.
+                    final PendingChange change = changes.computeIfAbsent(
+                            new Key(markRead.userId(), markRead.channelId()), key -> new PendingChange());
+                    change.increment = 0;
+                    if (change.markRead != null)
+                        change.markRead.result().complete(new ChannelReadState(0, change.markRead.messageId()));
+                    change.markRead = markRead;
+                }
+            }
+        }
+
+        final List<Map.Entry<Key, PendingChange>> entries = new ArrayList<>(changes.entrySet());
+        try {
+            for (int start = 0; start < entries.size(); start += MAX_PIPELINE_COMMANDS) {
+                final List<Map.Entry<Key, PendingChange>> chunk =
+                        entries.subList(start, Math.min(entries.size(), start + MAX_PIPELINE_COMMANDS));
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    chunk.forEach(entry -> write(connection, entry.getKey(), entry.getValue()));
+                    return null;
+                });
+            }
+            for (PendingChange change : changes.values()) {
+                if (change.markRead != null)
+                    change.markRead.result().complete(new ChannelReadState(change.increment, change.markRead.messageId()));
+            }
+            logger.debug("Applied {} unread counter updates to {} user channels.", batch.size(), changes.size());
+        } catch (RuntimeException e) {
+            logger.error("Failed to apply {} unread counter updates.", batch.size(), e);
+            for (PendingChange change : changes.values()) {
+                if (change.markRead != null)
+                    change.markRead.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    private static void write(final RedisConnection connection, final Key key, final PendingChange change) {
+        final byte[] field = String.valueOf(key.channelId()).getBytes(StandardCharsets.UTF_8);
+        final byte[] unreadKey = getKey(UNREAD_PREFIX, key.userId());
+        if (change.markRead != null) {
+            connection.hashCommands().hSet(getKey(READ_PREFIX, key.userId()), field,
+                    String.valueOf(change.markRead.messageId()).getBytes(StandardCharsets.UTF_8));
+            connection.hashCommands().hDel(unreadKey, field);
+        }
+        if (change.increment > 0)
+            connection.hashCommands().hIncrBy(unreadKey, field, change.increment);
+    }
+
+    private static byte[] getKey(final String prefix, final UUID userId) {
+        return (prefix + userId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (writerThread == null)
+            return;
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
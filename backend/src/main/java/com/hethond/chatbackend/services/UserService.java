@@ -1,14 +1,24 @@
 package com.hethond.chatbackend.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.hethond.chatbackend.entities.AccountStatus;
 import com.hethond.chatbackend.entities.Role;
 import com.hethond.chatbackend.entities.User;
 import com.hethond.chatbackend.exceptions.NotFoundException;
 import com.hethond.chatbackend.repositories.UserRepository;
+import com.hethond.chatbackend.security.AuthenticatedUser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -16,12 +26,38 @@ import java.util.UUID;
 @Service
 public class UserService {
     // TODO add logging to this service
+    private static final String INVALIDATION_CHANNEL = "user:invalidations";
 
     private final UserRepository userRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final PasswordHashingService passwordHashingService;
+
+    // Principals by user id. Saving a user evicts it here and, through INVALIDATION_CHANNEL, on every other node.
+    private final Cache<UUID, AuthenticatedUser> principalCache;
 
     @Autowired
-    public UserService(final UserRepository userRepository) {
+    public UserService(final UserRepository userRepository,
+                       final StringRedisTemplate redisTemplate,
+                       final PasswordHashingService passwordHashingService,
+                       final RedisMessageListenerContainer listenerContainer,
+                       final MeterRegistry meterRegistry,
+                       final @Value("${app.principalCacheSize:100000}") long principalCacheSize,
+                       final @Value("${app.principalCacheTtlSeconds:300}") long principalCacheTtlSeconds) {
         this.userRepository = userRepository;
+        this.redisTemplate = redisTemplate;
+        this.passwordHashingService = passwordHashingService;
+
+        this.principalCache = Caffeine.newBuilder()
+                .maximumSize(principalCacheSize)
+                .expireAfterWrite(Duration.ofSeconds(principalCacheTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principalCache, "principalCache");
+
+        listenerContainer.addMessageListener(
+                (message, pattern) -> principalCache.invalidate(
+                        UUID.fromString(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(INVALIDATION_CHANNEL));
     }
 
     public List<User> findAllUsers() { return userRepository.findAll(); }
@@ -31,6 +67,18 @@ public class UserService {
         return user.orElseThrow(() -> new NotFoundException("Could not find user by id [" + id + "]."));
     }
 
+    public AuthenticatedUser findAuthenticatedUserById(final UUID id) {
+        return principalCache.get(id, key -> userRepository.findAuthenticatedUserById(key)
+                .orElseThrow(() -> new NotFoundException("Could not find user by id [" + key + "].")));
+    }
+
+    /**
+     * Returns a reference to the user without loading it, for use as an association.
+     */
+    public User getUserReference(final UUID id) {
+        return userRepository.getReferenceById(id);
+    }
+
     public User findUserByUsername(final String username) {
         Optional<User> user = userRepository.findByUsername(username);
         return user.orElseThrow(() -> new NotFoundException("Could not find user by id [" + username + "]."));
@@ -53,11 +101,14 @@ public class UserService {
                            final String password,
                            final Role role,
                            final AccountStatus accountStatus) {
-        final User newUser = new User(phone, username, BCrypt.hashpw(password, BCrypt.gensalt()), role, accountStatus);
+        final User newUser = new User(phone, username, passwordHashingService.hash(password), role, accountStatus);
         return userRepository.save(newUser);
     }
 
     public User saveUser(User user) {
-        return userRepository.save(user);
+        final User savedUser = userRepository.save(user);
+        principalCache.invalidate(savedUser.getId());
+        redisTemplate.convertAndSend(INVALIDATION_CHANNEL, savedUser.getId().toString());
+        return savedUser;
     }
 }
@@ -39,10 +39,11 @@ public class VerificationService {
         redisTemplate.opsForValue().set(getRedisKey(phone), code, LIFESPAN_MIN, TimeUnit.MINUTES);
         try {
             smsService.sendMessage(SMS_AUTHOR, phone, code);
-        } catch (SmsSubmissionException ignored) {
-            // TODO find a way to resolve this instead of ignoring
+        } catch (SmsSubmissionException e) {
+            logger.error("Could not queue verification code for phone number [{}]: {}", phone, e.getMessage());
+            return;
         }
-        logger.info("Generated and sent verification code [{}] to phone number [{}].", code, phone);
+        logger.info("Generated and queued verification code [{}] for phone number [{}].", code, phone);
     }
 
     public void verifyCode(final String phone, final String code) {
@@ -0,0 +1,66 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.exceptions.SmsRejectedException;
+import com.hethond.chatbackend.exceptions.SmsSubmissionException;
+import com.vonage.client.VonageClient;
+import com.vonage.client.sms.MessageStatus;
+import com.vonage.client.sms.SmsSubmissionResponse;
+import com.vonage.client.sms.SmsSubmissionResponseMessage;
+import com.vonage.client.sms.messages.TextMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Service
+@ConditionalOnProperty(name = "app.smsSender", havingValue = "vonage", matchIfMissing = true)
+public class VonageSmsSender implements SmsSender {
+    private static final Logger logger = LoggerFactory.getLogger(VonageSmsSender.class);
+    // Statuses worth another attempt; any other status rejects the message for good.
+    private static final Set<MessageStatus> RETRYABLE_STATUSES = EnumSet.of(
+            MessageStatus.THROTTLED, MessageStatus.INTERNAL_ERROR, MessageStatus.TOO_MANY_BINDS, MessageStatus.COMMS_FAILURE);
+
+    private final VonageClient vonageClient;
+
+    @Autowired
+    public VonageSmsSender(final @Value("${app.vonageKey}") String vonageKey,
+                           final @Value("${app.vonageSecret}") String vonageSecret) {
+        this.vonageClient = VonageClient.builder()
+                .apiKey(vonageKey)
+                .apiSecret(vonageSecret)
+                .build();
+
+        logger.info("VonageSmsSender initialized successfully.");
+    }
+
+    @Override
+    public void send(final String author,
+                     final String recipient,
+                     final String content) throws SmsSubmissionException {
+        final TextMessage textMessage = new TextMessage(author, recipient, content, false);
+
+        final SmsSubmissionResponse response;
+        try {
+            response = vonageClient.getSmsClient().submitMessage(textMessage);
+        } catch (RuntimeException e) {
+            logger.error("Failed to send sms message due to Vonage API error.");
+            throw new SmsSubmissionException("Vonage API error: " + e.getMessage());
+        }
+
+        final SmsSubmissionResponseMessage responseMessage = response.getMessages().getFirst();
+        if (responseMessage.getStatus() != MessageStatus.OK) {
+            final String errorMessage = responseMessage.getErrorText();
+            logger.error("Failed to send SMS from {} to {}: {}", author, recipient, errorMessage);
+            if (!RETRYABLE_STATUSES.contains(responseMessage.getStatus()))
+                throw new SmsRejectedException(errorMessage);
+            throw new SmsSubmissionException(errorMessage);
+        }
+
+        logger.info("SMS sent successfully from {} to {}", author, recipient);
+    }
+}
@@ -0,0 +1,4 @@
+-- Channels used by the load generator (ids 1-10); members are added through /channels/{id}/members
+INSERT INTO channels (name) VALUES
+    ('loadtest-1'), ('loadtest-2'), ('loadtest-3'), ('loadtest-4'), ('loadtest-5'),
+    ('loadtest-6'), ('loadtest-7'), ('loadtest-8'), ('loadtest-9'), ('loadtest-10');
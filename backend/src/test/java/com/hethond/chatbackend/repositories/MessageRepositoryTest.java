@@ -0,0 +1,102 @@
+package com.hethond.chatbackend.repositories;
+
+import com.hethond.chatbackend.entities.AccountStatus;
+import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.Role;
+import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.entities.dto.MessageProjection;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Counts the statements a history page prepares; the application properties target MySQL, the test an embedded H2.
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class MessageRepositoryTest {
+    private static final int MESSAGE_COUNT = 50;
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private Channel channel;
+    private List<User> authors;
+
+    @BeforeEach
+    void setUp() {
+        authors = List.of(persistUser("alice"), persistUser("bob"), persistUser("carol"));
+        channel = entityManager.persist(new Channel("general"));
+        for (int i = 1; i <= MESSAGE_COUNT; i++) {
+            final Message message = new Message(authors.get(i % authors.size()), channel, "message " + i);
+            message.setId(i);
+            entityManager.persist(message);
+        }
+        // Pages must come from the database, not from entities already in the persistence context.
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private User persistUser(final String username) {
+        return entityManager.persist(new User(null, username, "hash", Role.USER, AccountStatus.ACTIVE));
+    }
+
+    @Test
+    void pageBeforeIsOneStatement() {
+        final Statistics statistics = getStatistics();
+        statistics.clear();
+
+        final Slice<MessageProjection> page = messageRepository.findProjectionsByChannelIdAndIdLessThan(
+                channel.getId(), 41, PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.DESC, "id")));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(PAGE_SIZE, page.getNumberOfElements());
+        assertTrue(page.hasNext());
+        assertEquals(40, page.getContent().getFirst().id());
+        assertEquals(21, page.getContent().getLast().id());
+        for (MessageProjection message : page) {
+            final User author = authors.get((int) (message.id() % authors.size()));
+            assertEquals(author.getId(), message.authorId());
+            assertEquals(author.getUsername(), message.authorUsername());
+            assertEquals("general", message.channelName());
+        }
+    }
+
+    @Test
+    void lastPageAfterIsOneStatement() {
+        final Statistics statistics = getStatistics();
+        statistics.clear();
+
+        final Slice<MessageProjection> page = messageRepository.findProjectionsByChannelIdAndIdGreaterThan(
+                channel.getId(), 40, PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.ASC, "id")));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(MESSAGE_COUNT - 40, page.getNumberOfElements());
+        assertFalse(page.hasNext());
+        assertEquals("message 41", page.getContent().getFirst().content());
+    }
+
+    private Statistics getStatistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+}
@@ -0,0 +1,83 @@
+package com.hethond.chatbackend.security;
+
+import com.hethond.chatbackend.services.ChannelService;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+
+import java.security.Principal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChannelSubscriptionInterceptorTest {
+    private static final long MEMBER_CHANNEL_ID = 5;
+
+    private final ChannelService channelService = mock(ChannelService.class);
+    private final ChannelSubscriptionInterceptor interceptor = new ChannelSubscriptionInterceptor(channelService);
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final UUID userId = UUID.randomUUID();
+
+    private Message<byte[]> frame(final StompCommand command, final String destination) {
+        final StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setDestination(destination);
+        accessor.setUser((Principal) userId::toString);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private void assertAllowed(final StompCommand command, final String destination) {
+        final Message<byte[]> message = frame(command, destination);
+        assertSame(message, interceptor.preSend(message, channel));
+    }
+
+    private void assertDenied(final StompCommand command, final String destination) {
+        assertThrows(AccessDeniedException.class, () -> interceptor.preSend(frame(command, destination), channel));
+    }
+
+    @Test
+    void allowsTheDestinationsTheServerPublishesTo() {
+        when(channelService.isChannelMember(anyLong(), eq(userId))).thenReturn(false);
+        when(channelService.isChannelMember(MEMBER_CHANNEL_ID, userId)).thenReturn(true);
+
+        assertAllowed(StompCommand.SUBSCRIBE, "/topic/channels/" + MEMBER_CHANNEL_ID);
+        assertAllowed(StompCommand.SUBSCRIBE, "/user/topic/messages");
+        assertAllowed(StompCommand.SUBSCRIBE, "/user/topic/receipts");
+        assertAllowed(StompCommand.SUBSCRIBE, "/user/topic/presence");
+        assertAllowed(StompCommand.SEND, "/app/channels/" + MEMBER_CHANNEL_ID + "/messages");
+        assertDenied(StompCommand.SUBSCRIBE, "/topic/channels/6");
+    }
+
+    @Test
+    void deniesWildcardSubscriptions() {
+        when(channelService.isChannelMember(anyLong(), eq(userId))).thenReturn(true);
+
+        assertDenied(StompCommand.SUBSCRIBE, "/topic/**");
+        assertDenied(StompCommand.SUBSCRIBE, "/topic/*/5");
+        assertDenied(StompCommand.SUBSCRIBE, "/topic/channels/*");
+        assertDenied(StompCommand.SUBSCRIBE, "/topic/channels/{id}");
+        assertDenied(StompCommand.SUBSCRIBE, "/topic/channels/");
+        assertDenied(StompCommand.SUBSCRIBE, "/topic/messages");
+        assertDenied(StompCommand.SUBSCRIBE, "/user/topic/**");
+        assertDenied(StompCommand.SUBSCRIBE, "/user/" + UUID.randomUUID() + "/topic/messages");
+    }
+
+    @Test
+    void deniesFramesSentToTheBroker() {
+        when(channelService.isChannelMember(anyLong(), eq(userId))).thenReturn(true);
+
+        assertDenied(StompCommand.SEND, "/topic/channels/" + MEMBER_CHANNEL_ID);
+        assertDenied(StompCommand.SEND, "/user/topic/messages");
+        assertDenied(StompCommand.SEND, "/app");
+        assertDenied(StompCommand.SEND, null);
+    }
+}
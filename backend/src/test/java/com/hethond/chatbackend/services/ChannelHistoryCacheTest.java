@@ -0,0 +1,125 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.entities.dto.MessageProjection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Random posts, pages and evictions, with every page the cache answers checked against the stored messages.
+class ChannelHistoryCacheTest {
+    private static final long CHANNEL_ID = 1;
+    private static final UUID AUTHOR_ID = UUID.randomUUID();
+
+    private static MessageBasicDto createMessage(final long id) {
+        return MessageBasicDto.fromProjection(new MessageProjection(id, "message " + id, AUTHOR_ID, "author",
+                CHANNEL_ID, "general"));
+    }
+
+    private static List<Long> getIds(final Slice<MessageBasicDto> slice) {
+        return slice.getContent().stream().map(MessageBasicDto::getId).toList();
+    }
+
+    @Test
+    void answersPagesLikeTheStore() {
+        final Random random = new Random(42);
+        int answered = 0;
+        for (int round = 0; round < 500; round++)
+            answered += runRound(random, 1 + random.nextInt(8));
+        // Most pages fit the window; a cache that never answers would pass the checks trivially.
+        assertTrue(answered > 2_000, "answered " + answered);
+    }
+
+    private static int runRound(final Random random, final int capacity) {
+        final List<Long> stored = new ArrayList<>();
+        final MessageStore messageStore = mock(MessageStore.class);
+        when(messageStore.findBefore(eq(CHANNEL_ID), anyLong(), anyInt())).thenAnswer(invocation -> {
+            final long before = invocation.getArgument(1);
+            final int size = invocation.getArgument(2);
+            final List<Long> older = stored.stream().filter(id -> id < before).sorted(Comparator.reverseOrder()).toList();
+            return new SliceImpl<>(older.stream().limit(size).map(ChannelHistoryCacheTest::createMessage).toList(),
+                    PageRequest.of(0, size), older.size() > size);
+        });
+        final ChannelHistoryCache cache = new ChannelHistoryCache(messageStore, new SimpleMeterRegistry(),
+                capacity, Long.MAX_VALUE);
+
+        long nextId = 10;
+        for (int i = random.nextInt(3 * capacity); i > 0; i--) {
+            stored.add(nextId);
+            nextId += 1 + random.nextInt(3);
+        }
+
+        int answered = 0;
+        for (int step = 0; step < 80; step++) {
+            switch (random.nextInt(7)) {
+                case 0, 1 -> {
+                    // Concurrent posts commit in id order but may reach the cache in reverse.
+                    final int count = 1 + random.nextInt(3);
+                    final List<Long> posted = new ArrayList<>();
+                    for (int i = 0; i < count; i++) {
+                        posted.add(nextId);
+                        nextId += 1 + random.nextInt(3);
+                    }
+                    stored.addAll(posted);
+                    if (random.nextBoolean())
+                        posted.reversed().forEach(id -> cache.append(CHANNEL_ID, createMessage(id)));
+                    else
+                        posted.forEach(id -> cache.append(CHANNEL_ID, createMessage(id)));
+                    // A relayed duplicate must not be stored twice.
+                    if (random.nextInt(4) == 0)
+                        cache.append(CHANNEL_ID, createMessage(posted.getFirst()));
+                }
+                case 2, 3 -> {
+                    final int size = 1 + random.nextInt(capacity + 1);
+                    final Long before = random.nextInt(3) == 0 ? null : random.nextLong(nextId + 2);
+                    final Optional<Slice<MessageBasicDto>> page = cache.findMessagesBefore(CHANNEL_ID, before, size);
+                    if (before == null && size <= capacity)
+                        assertTrue(page.isPresent(), "the newest page loads the buffer");
+                    if (page.isPresent()) {
+                        final long cursor = before != null ? before : Long.MAX_VALUE;
+                        final List<Long> older = stored.stream().filter(id -> id < cursor)
+                                .sorted(Comparator.reverseOrder()).toList();
+                        assertEquals(older.subList(0, Math.min(size, older.size())), getIds(page.get()),
+                                "before " + before + ", size " + size);
+                        assertEquals(older.size() > size, page.get().hasNext(), "hasNext before " + before);
+                        answered++;
+                    }
+                }
+                case 4, 5 -> {
+                    final int size = 1 + random.nextInt(capacity + 2);
+                    final long after = random.nextLong(nextId + 2);
+                    final Optional<Slice<MessageBasicDto>> page = cache.findMessagesAfter(CHANNEL_ID, after, size);
+                    if (page.isPresent()) {
+                        final List<Long> newer = stored.stream().filter(id -> id > after).sorted().toList();
+                        assertEquals(newer.subList(0, Math.min(size, newer.size())), getIds(page.get()),
+                                "after " + after + ", size " + size);
+                        assertEquals(newer.size() > size, page.get().hasNext(), "hasNext after " + after);
+                        answered++;
+                    }
+                }
+                default -> {
+                    if (random.nextInt(4) == 0)
+                        cache.evict(CHANNEL_ID);
+                }
+            }
+        }
+        return answered;
+    }
+}
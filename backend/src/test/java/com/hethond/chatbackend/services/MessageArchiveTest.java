@@ -0,0 +1,263 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.AccountStatus;
+import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.Role;
+import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.repositories.ChannelRepository;
+import com.hethond.chatbackend.repositories.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+// Pages that cross from archive segments into the table, and segments that are damaged or gone.
+@DataJpaTest(properties = "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect")
+class MessageArchiveTest {
+    private static final int ARCHIVED_COUNT = 300;
+    private static final int LIVE_COUNT = 200;
+    // About 260 bytes per record, so the segment holds two blocks; the column takes 255 characters.
+    private static final String CONTENT = "x".repeat(220);
+
+    @TempDir
+    private Path directory;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private MessageRepository messageRepository;
+    @Autowired
+    private ChannelRepository channelRepository;
+
+    private User author;
+    private Channel channel;
+    private final List<Long> archived = new ArrayList<>();
+    private final List<Long> live = new ArrayList<>();
+    private final List<Long> all = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        author = entityManager.persist(new User(null, "author", "hash", Role.USER, AccountStatus.ACTIVE));
+        channel = entityManager.persist(new Channel("general"));
+        // Old enough to be archived with archiveAfterDays=0, and too new to be.
+        final long oldId = MessageIdGenerator.getMinIdAt(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+        final long newId = MessageIdGenerator.getMinIdAt(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        for (int i = 0; i < ARCHIVED_COUNT; i++)
+            archived.add(persistMessage(oldId + 2L * i, i));
+        for (int i = 0; i < LIVE_COUNT; i++)
+            live.add(persistMessage(newId + i, ARCHIVED_COUNT + i));
+        all.addAll(archived);
+        all.addAll(live);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private long persistMessage(final long id, final int number) {
+        return persistMessage(channel, id, number);
+    }
+
+    private long persistMessage(final Channel channel, final long id, final int number) {
+        final Message message = new Message(author, channel, CONTENT + " " + number);
+        message.setId(id);
+        entityManager.persist(message);
+        return id;
+    }
+
+    private MessageArchive openArchive() throws IOException {
+        return new MessageArchive(messageRepository, channelRepository, true, directory, 0, 100, 0);
+    }
+
+    private JpaMessageStore openStore(final MessageArchive archive) {
+        return new JpaMessageStore(messageRepository, mock(MessageBatchWriter.class), new MessageIdGenerator(0), archive);
+    }
+
+    // Runs the archiver; the bulk delete of its second run bypasses the persistence context.
+    private void archive(final MessageArchive archive) {
+        archive.archive();
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static List<Long> getIds(final Slice<MessageBasicDto> slice) {
+        return slice.getContent().stream().map(MessageBasicDto::getId).toList();
+    }
+
+    @Test
+    void pagesSpanTheArchiveAndTheTable() throws IOException {
+        final MessageArchive archive = openArchive();
+        archive(archive);
+        // The first run copies the rows; they stay in the table until the next one.
+        assertEquals(archived.getLast(), archive.getArchivedUpTo(channel.getId()));
+        assertEquals(ARCHIVED_COUNT + LIVE_COUNT, messageRepository.count());
+        checkPages(openStore(archive));
+
+        archive(archive);
+        assertEquals(LIVE_COUNT, messageRepository.count());
+        checkPages(openStore(archive));
+        checkPages(openStore(openArchive()));
+    }
+
+    private void checkPages(final JpaMessageStore store) {
+        final long channelId = channel.getId();
+
+        final Slice<MessageBasicDto> newest = store.findBefore(channelId, Long.MAX_VALUE, 50);
+        assertEquals(live.subList(150, 200).reversed(), getIds(newest));
+        assertTrue(newest.hasNext());
+
+        final Slice<MessageBasicDto> boundary = store.findBefore(channelId, live.get(20), 50);
+        assertEquals(all.subList(270, 320).reversed(), getIds(boundary));
+        assertTrue(boundary.hasNext());
+        final MessageBasicDto archivedMessage = boundary.getContent().getLast();
+        assertEquals(CONTENT + " 270", archivedMessage.getContent());
+        assertEquals(author.getId(), archivedMessage.getAuthor().getId());
+        assertEquals("general", archivedMessage.getChannel().getName());
+
+        final Slice<MessageBasicDto> oldest = store.findBefore(channelId, archived.get(10), 50);
+        assertEquals(archived.subList(0, 10).reversed(), getIds(oldest));
+        assertFalse(oldest.hasNext());
+
+        final Slice<MessageBasicDto> after = store.findAfter(channelId, archived.get(279), 50);
+        assertEquals(all.subList(280, 330), getIds(after));
+        assertTrue(after.hasNext());
+
+        final Slice<MessageBasicDto> last = store.findAfter(channelId, live.get(150), 100);
+        assertEquals(live.subList(151, 200), getIds(last));
+        assertFalse(last.hasNext());
+
+        final Page<MessageBasicDto> ascending = store.findByChannelId(channelId,
+                PageRequest.of(4, 70, Sort.by(Sort.Direction.ASC, "id")));
+        assertEquals(all.subList(280, 350), ascending.getContent().stream().map(MessageBasicDto::getId).toList());
+        assertEquals(ARCHIVED_COUNT + LIVE_COUNT, ascending.getTotalElements());
+
+        final Page<MessageBasicDto> descending = store.findByChannelId(channelId,
+                PageRequest.of(2, 90, Sort.by(Sort.Direction.DESC, "id")));
+        assertEquals(all.reversed().subList(180, 270), descending.getContent().stream().map(MessageBasicDto::getId).toList());
+
+        assertEquals(List.of(archived.get(3), live.get(7)), store.findByIds(channelId, List.of(live.get(7), 12345L, archived.get(3)))
+                .stream().map(MessageBasicDto::getId).sorted().toList());
+
+        final List<Long> scanned = new ArrayList<>();
+        store.forEachText(message -> scanned.add(message.id()));
+        assertEquals(all, scanned);
+    }
+
+    @Test
+    void readsTheTableWhileASegmentCannotBeOpened() throws IOException {
+        archive(openArchive());
+        final Path segment = getSegment();
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            file.truncate(file.size() - 4);
+        }
+
+        // The rows the segment covers are still in the table, so every page reads from there.
+        final MessageArchive reopened = openArchive();
+        assertEquals(Long.MIN_VALUE, reopened.getArchivedUpTo(channel.getId()));
+        checkPages(openStore(reopened));
+
+        // The next run writes the segment again over the broken file.
+        archive(reopened);
+        assertEquals(archived.getLast(), reopened.getArchivedUpTo(channel.getId()));
+        final MessageArchive repaired = openArchive();
+        assertEquals(archived.getLast(), repaired.getArchivedUpTo(channel.getId()));
+        checkPages(openStore(repaired));
+    }
+
+    @Test
+    void failsOnlyTheReadsOfACorruptBlock() throws IOException {
+        final MessageArchive archive = openArchive();
+        archive(archive);
+        archive(archive);
+        try (FileChannel file = FileChannel.open(getSegment(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Inside the first block's deflate stream.
+            final ByteBuffer data = ByteBuffer.allocate(1);
+            file.read(data, 20);
+            file.write(ByteBuffer.wrap(new byte[]{(byte) (data.get(0) ^ 0xFF)}), 20);
+        }
+
+        final JpaMessageStore store = openStore(openArchive());
+        final long channelId = channel.getId();
+        assertEquals(live.subList(150, 200).reversed(), getIds(store.findBefore(channelId, Long.MAX_VALUE, 50)));
+        assertEquals(archived.subList(295, 300).reversed(), getIds(store.findBefore(channelId, live.getFirst(), 5)));
+        assertThrows(UncheckedIOException.class, () -> store.findBefore(channelId, archived.get(10), 5));
+
+        final List<Long> scanned = new ArrayList<>();
+        store.forEachText(message -> scanned.add(message.id()));
+        assertFalse(scanned.contains(archived.getFirst()));
+        assertTrue(scanned.contains(archived.getLast()));
+        assertEquals(live, scanned.subList(scanned.size() - LIVE_COUNT, scanned.size()));
+    }
+
+    @Test
+    void keepsNewerMessagesWhenASegmentIsGone() throws IOException {
+        final MessageArchive archive = openArchive();
+        archive(archive);
+        archive(archive);
+        Files.delete(getSegment());
+
+        final JpaMessageStore store = openStore(openArchive());
+        final long channelId = channel.getId();
+        final Slice<MessageBasicDto> newest = store.findBefore(channelId, Long.MAX_VALUE, LIVE_COUNT + 50);
+        assertEquals(live.reversed(), getIds(newest));
+        assertFalse(newest.hasNext());
+        assertTrue(store.findBefore(channelId, live.getFirst(), 50).getContent().isEmpty());
+        assertEquals(live.subList(0, 10), getIds(store.findAfter(channelId, Long.MIN_VALUE, 10)));
+
+        final List<Long> scanned = new ArrayList<>();
+        store.forEachText(message -> scanned.add(message.id()));
+        assertEquals(live, scanned);
+    }
+
+    @Test
+    void archivesTheOtherChannelsWhenOneFails() throws IOException {
+        final Channel other = entityManager.persist(new Channel("random"));
+        final long oldId = MessageIdGenerator.getMinIdAt(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+        for (int i = 0; i < ARCHIVED_COUNT; i++)
+            persistMessage(other, oldId + 2L * i + 1, i);
+        entityManager.flush();
+        entityManager.clear();
+
+        // A file where the first listed channel's directory belongs makes that channel fail.
+        final MessageArchive archive = openArchive();
+        final List<Long> channelIds = messageRepository.findChannelIdsByIdLessThan(Long.MAX_VALUE);
+        assertEquals(2, channelIds.size());
+        Files.createFile(directory.resolve(String.valueOf(channelIds.getFirst())));
+        archive(archive);
+
+        assertEquals(Long.MIN_VALUE, archive.getArchivedUpTo(channelIds.getFirst()));
+        assertTrue(archive.getArchivedUpTo(channelIds.getLast()) > Long.MIN_VALUE);
+    }
+
+    private Path getSegment() throws IOException {
+        try (Stream<Path> segments = Files.list(directory.resolve(String.valueOf(channel.getId())))) {
+            final List<Path> found = segments.filter(path -> path.getFileName().toString().endsWith(".archive")).toList();
+            assertEquals(1, found.size());
+            return found.getFirst();
+        }
+    }
+}
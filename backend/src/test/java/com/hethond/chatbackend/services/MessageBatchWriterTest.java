@@ -0,0 +1,93 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.repositories.MessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageBatchWriterTest {
+    private static final int BATCH_SIZE = 16;
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private MessageBatchWriter writer;
+
+    private MessageBatchWriter openWriter() {
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        // A long delay, so every message submitted below lands in one batch.
+        writer = new MessageBatchWriter(messageRepository, transactionManager, true, 100, BATCH_SIZE, 500);
+        return writer;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (writer != null)
+            writer.destroy();
+    }
+
+    private static List<Message> createMessages() {
+        final List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++)
+            messages.add(new Message(null, null, "message " + i));
+        return messages;
+    }
+
+    @Test
+    void failsOnlyTheMessageTheDatabaseRejects() throws Exception {
+        final List<Message> messages = createMessages();
+        final Message rejected = messages.get(11);
+        when(messageRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            final List<Message> batch = invocation.getArgument(0);
+            if (batch.contains(rejected))
+                throw new DataIntegrityViolationException("Duplicate entry");
+            return batch;
+        });
+
+        final MessageBatchWriter writer = openWriter();
+        final List<CompletableFuture<Message>> results = messages.stream().map(writer::submit).toList();
+
+        for (int i = 0; i < messages.size(); i++) {
+            if (i == 11) {
+                final ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(11).get(5, TimeUnit.SECONDS));
+                assertInstanceOf(DataIntegrityViolationException.class, e.getCause());
+            } else {
+                assertSame(messages.get(i), results.get(i).get(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    void failsTheWholeBatchWhileTheDatabaseIsUnavailable() throws Exception {
+        when(messageRepository.saveAll(anyList())).thenThrow(new DataAccessResourceFailureException("Connection refused"));
+
+        final MessageBatchWriter writer = openWriter();
+        final List<CompletableFuture<Message>> results = createMessages().stream().map(writer::submit).toList();
+
+        for (CompletableFuture<Message> result : results) {
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(DataAccessResourceFailureException.class, e.getCause());
+        }
+        // Not retried message by message.
+        verify(messageRepository, atMost(BATCH_SIZE - 1)).saveAll(anyList());
+    }
+}
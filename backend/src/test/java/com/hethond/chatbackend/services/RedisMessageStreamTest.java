@@ -0,0 +1,177 @@
+package com.hethond.chatbackend.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.entities.dto.MessageProjection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Pages read around messages that are missing from the stream, against an in-memory stream.
+class RedisMessageStreamTest {
+    private static final long CHANNEL_ID = 1;
+    private static final UUID AUTHOR_ID = UUID.randomUUID();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ByteRecord> stream = new ArrayList<>();
+    private long nextSequence = 1;
+    // Appends the fake Redis fails, as when the connection drops.
+    private Predicate<ByteRecord> failing = record -> false;
+    private RedisMessageStream messageStream;
+
+    @BeforeEach
+    void setUp() {
+        final RedisConnection connection = mock(RedisConnection.class);
+        final RedisStreamCommands streamCommands = mock(RedisStreamCommands.class);
+        final RedisKeyCommands keyCommands = mock(RedisKeyCommands.class);
+        when(connection.streamCommands()).thenReturn(streamCommands);
+        when(connection.keyCommands()).thenReturn(keyCommands);
+        when(streamCommands.xAdd(any(ByteRecord.class), any(XAddOptions.class))).thenAnswer(invocation -> {
+            final ByteRecord record = invocation.getArgument(0);
+            if (failing.test(record))
+                throw new RedisConnectionFailureException("Connection lost");
+            final RecordId id = RecordId.of(nextSequence++ + "-0");
+            stream.add(record.withId(id));
+            return id;
+        });
+        when(streamCommands.xRevRange(any(byte[].class), any(), any(Limit.class))).thenAnswer(invocation -> {
+            final Range<String> range = invocation.getArgument(1);
+            final Limit limit = invocation.getArgument(2);
+            final long upper = range.getUpperBound().getValue().map(RecordId::of).map(RecordId::getTimestamp)
+                    .orElse(Long.MAX_VALUE);
+            return stream.reversed().stream()
+                    .filter(record -> record.getId().getTimestamp() < upper)
+                    .limit(limit.getCount())
+                    .toList();
+        });
+        when(keyCommands.del(any(byte[].class))).thenAnswer(invocation -> {
+            stream.clear();
+            return 1L;
+        });
+
+        final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            return List.of();
+        });
+        when(redisTemplate.execute(any(RedisCallback.class))).thenAnswer(invocation ->
+                invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection));
+
+        messageStream = new RedisMessageStream(redisTemplate, objectMapper, true, 1000, 1, meterRegistry);
+    }
+
+    private void append(final long... messageIds) throws JsonProcessingException {
+        for (long messageId : messageIds) {
+            final MessageBasicDto message = MessageBasicDto.fromProjection(new MessageProjection(messageId,
+                    "message " + messageId, AUTHOR_ID, "author", CHANNEL_ID, "general"));
+            messageStream.append(CHANNEL_ID, messageId, objectMapper.writeValueAsBytes(message));
+        }
+    }
+
+    private static long[] range(final long first, final long last) {
+        return LongStream.rangeClosed(first, last).toArray();
+    }
+
+    private static byte[] findField(final ByteRecord record, final String name) {
+        final byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        return record.getValue().entrySet().stream()
+                .filter(field -> Arrays.equals(field.getKey(), key))
+                .map(Map.Entry::getValue)
+                .findFirst().orElse(null);
+    }
+
+    private static Predicate<ByteRecord> isEntryOf(final long messageId) {
+        final byte[] id = String.valueOf(messageId).getBytes(StandardCharsets.UTF_8);
+        return record -> Arrays.equals(findField(record, "id"), id);
+    }
+
+    private List<Long> readIds(final Long before, final int size) {
+        final Optional<Slice<MessageBasicDto>> page = messageStream.findMessagesBefore(CHANNEL_ID, before, size);
+        assertTrue(page.isPresent(), "page before " + before + " is served from the stream");
+        return page.get().getContent().stream().map(MessageBasicDto::getId).toList();
+    }
+
+    private boolean isServed(final Long before, final int size) {
+        return messageStream.findMessagesBefore(CHANNEL_ID, before, size).isPresent();
+    }
+
+    @Test
+    void fallsBackOnlyForPagesThatIncludeAFailedAppend() throws JsonProcessingException {
+        append(range(1, 20));
+        // The message fails; the gap entry that replaces it does not.
+        failing = isEntryOf(21).and(record -> findField(record, "m") != null);
+        append(21);
+        failing = record -> false;
+        append(range(22, 30));
+
+        assertEquals(1, meterRegistry.counter("chat.stream.append.failures").count());
+        assertEquals(List.of(30L, 29L, 28L, 27L, 26L), readIds(null, 5));
+        assertFalse(isServed(null, 10));
+        assertFalse(isServed(23L, 5));
+        assertEquals(List.of(20L, 19L, 18L, 17L, 16L), readIds(21L, 5));
+    }
+
+    @Test
+    void restartsTheStreamAfterAGapThatCouldNotBeMarked() throws JsonProcessingException {
+        append(range(1, 19));
+        failing = isEntryOf(21);
+        append(21);
+        failing = record -> false;
+
+        // Nothing in Redis shows the gap, so this node stops reading the stream.
+        assertFalse(isServed(21L, 5));
+        // A straggler older than the gap is appended as usual.
+        append(20);
+        assertFalse(isServed(null, 1));
+
+        append(22);
+        assertEquals(1, stream.size());
+        assertFalse(isServed(null, 1));
+        append(range(23, 30));
+        assertEquals(List.of(30L, 29L, 28L, 27L, 26L), readIds(null, 5));
+        assertFalse(isServed(23L, 5));
+    }
+
+    @Test
+    void fallsBackForPagesThatIncludeADroppedFanOut() throws JsonProcessingException {
+        append(range(1, 10));
+        // The fan-out of message 12 was dropped while message 11 still waited in its partition.
+        messageStream.markGap(CHANNEL_ID, 12);
+        append(11, 13);
+
+        assertEquals(List.of(13L), readIds(null, 1));
+        assertFalse(isServed(null, 2));
+        assertEquals(List.of(11L, 10L, 9L), readIds(12L, 3));
+    }
+}
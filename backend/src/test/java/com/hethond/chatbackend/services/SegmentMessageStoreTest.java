@@ -0,0 +1,234 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.AccountStatus;
+import com.hethond.chatbackend.entities.Channel;
+import com.hethond.chatbackend.entities.Message;
+import com.hethond.chatbackend.entities.Role;
+import com.hethond.chatbackend.entities.User;
+import com.hethond.chatbackend.entities.dto.MessageBasicDto;
+import com.hethond.chatbackend.repositories.ChannelRepository;
+import com.hethond.chatbackend.security.AuthenticatedUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SegmentMessageStoreTest {
+    private static final long CHANNEL_ID = 7;
+    // Record header: body length and CRC; the body starts with the message id.
+    private static final int HEADER_BYTES = 8;
+    private static final int MIN_SEGMENT_BYTES = 1024 * 1024;
+
+    @TempDir
+    private Path directory;
+
+    private final ChannelRepository channelRepository = mock(ChannelRepository.class);
+    private final UserService userService = mock(UserService.class);
+    private final MessageIdGenerator messageIdGenerator = new MessageIdGenerator(1);
+    private final User author = new User(UUID.randomUUID(), null, "author", "hash", Role.USER, AccountStatus.ACTIVE);
+    private final List<SegmentMessageStore> stores = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(channelRepository.findById(anyLong())).thenAnswer(invocation -> {
+            final Channel channel = new Channel("general");
+            channel.setId(invocation.getArgument(0));
+            return Optional.of(channel);
+        });
+        when(userService.findAuthenticatedUserById(any())).thenAnswer(invocation ->
+                new AuthenticatedUser(invocation.getArgument(0), "author", Role.USER, AccountStatus.ACTIVE));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (SegmentMessageStore store : stores)
+            store.destroy();
+    }
+
+    private SegmentMessageStore openStore(final int segmentBytes) throws IOException {
+        final SegmentMessageStore store = new SegmentMessageStore(channelRepository, userService, messageIdGenerator,
+                directory, segmentBytes, 0);
+        stores.add(store);
+        return store;
+    }
+
+    private List<Long> post(final SegmentMessageStore store, final int count, final String content) {
+        final Channel channel = new Channel();
+        channel.setId(CHANNEL_ID);
+        final List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            ids.add(store.save(new Message(author, channel, content + " " + i)).getId());
+        return ids;
+    }
+
+    private static List<Long> getIds(final Slice<MessageBasicDto> slice) {
+        return slice.getContent().stream().map(MessageBasicDto::getId).toList();
+    }
+
+    @Test
+    void readsBackWhatWasWrittenAcrossSegmentsAndRestarts() throws Exception {
+        SegmentMessageStore store = openStore(MIN_SEGMENT_BYTES);
+        // About 2 KB per record, so the channel spans several segments.
+        final List<Long> ids = post(store, 1500, "ü".repeat(1000));
+        try (Stream<Path> segments = Files.list(directory.resolve(String.valueOf(CHANNEL_ID)))) {
+            assertTrue(segments.count() > 1);
+        }
+
+        for (int reopen = 0; reopen < 2; reopen++) {
+            final Slice<MessageBasicDto> newest = store.findBefore(CHANNEL_ID, Long.MAX_VALUE, 50);
+            assertEquals(ids.subList(1450, 1500).reversed(), getIds(newest));
+            assertTrue(newest.hasNext());
+            assertEquals("ü".repeat(1000) + " 1499", newest.getContent().getFirst().getContent());
+            assertEquals(author.getId(), newest.getContent().getFirst().getAuthor().getId());
+            assertEquals("general", newest.getContent().getFirst().getChannel().getName());
+
+            final Slice<MessageBasicDto> oldest = store.findBefore(CHANNEL_ID, ids.get(30), 50);
+            assertEquals(ids.subList(0, 30).reversed(), getIds(oldest));
+            assertFalse(oldest.hasNext());
+
+            final Slice<MessageBasicDto> after = store.findAfter(CHANNEL_ID, ids.get(699), 100);
+            assertEquals(ids.subList(700, 800), getIds(after));
+            assertTrue(after.hasNext());
+
+            final Page<MessageBasicDto> page = store.findByChannelId(CHANNEL_ID,
+                    PageRequest.of(3, 100, Sort.by(Sort.Direction.DESC, "id")));
+            assertEquals(ids.subList(1100, 1200).reversed(), page.getContent().stream().map(MessageBasicDto::getId).toList());
+            assertEquals(1500, page.getTotalElements());
+
+            assertEquals(List.of(ids.get(5), ids.get(1499)), store.findByIds(CHANNEL_ID, List.of(ids.get(5), 1L, ids.get(1499)))
+                    .stream().map(MessageBasicDto::getId).toList());
+
+            final List<Long> scanned = new ArrayList<>();
+            store.forEachText(message -> scanned.add(message.id()));
+            assertEquals(ids, scanned);
+
+            store.destroy();
+            store = openStore(MIN_SEGMENT_BYTES);
+        }
+    }
+
+    @Test
+    void dropsATruncatedTailAndKeepsAppending() throws Exception {
+        final SegmentMessageStore store = openStore(MIN_SEGMENT_BYTES);
+        final List<Long> ids = post(store, 100, "message");
+        store.destroy();
+
+        final Path segment = getNewestSegment();
+        final int lastRecord = findRecordOffsets(segment).getLast();
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            file.truncate(lastRecord + HEADER_BYTES + 12);
+        }
+
+        final SegmentMessageStore reopened = openStore(MIN_SEGMENT_BYTES);
+        assertEquals(ids.subList(49, 99).reversed(), getIds(reopened.findBefore(CHANNEL_ID, Long.MAX_VALUE, 50)));
+
+        final List<Long> later = post(reopened, 3, "later");
+        reopened.destroy();
+        final List<Long> expected = new ArrayList<>(ids.subList(97, 99));
+        expected.addAll(later);
+        assertEquals(expected.reversed(), getIds(openStore(MIN_SEGMENT_BYTES).findBefore(CHANNEL_ID, Long.MAX_VALUE, 5)));
+    }
+
+    @Test
+    void endsTheSegmentAtARecordWithABadChecksum() throws Exception {
+        final SegmentMessageStore store = openStore(MIN_SEGMENT_BYTES);
+        final List<Long> ids = post(store, 100, "message");
+        store.destroy();
+
+        final Path segment = getNewestSegment();
+        final int corrupted = findRecordOffsets(segment).get(90);
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The last content byte; the length and id still look valid.
+            final int position = corrupted + HEADER_BYTES + readInt(file, corrupted) - 1;
+            final ByteBuffer content = ByteBuffer.allocate(1);
+            file.read(content, position);
+            file.write(ByteBuffer.wrap(new byte[]{(byte) (content.get(0) ^ 1)}), position);
+        }
+
+        final SegmentMessageStore reopened = openStore(MIN_SEGMENT_BYTES);
+        assertEquals(ids.subList(0, 90), getIds(reopened.findAfter(CHANNEL_ID, Long.MIN_VALUE, 100)));
+        final Long next = post(reopened, 1, "next").getFirst();
+        assertEquals(List.of(next, ids.get(89)), getIds(reopened.findBefore(CHANNEL_ID, Long.MAX_VALUE, 2)));
+    }
+
+    @Test
+    @Timeout(60)
+    void readersSeeAConsistentPrefixWhileAppending() throws Exception {
+        final SegmentMessageStore store = openStore(MIN_SEGMENT_BYTES);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread reader = Thread.ofPlatform().start(() -> {
+            try {
+                int seen = 0;
+                while (seen < 5000) {
+                    final List<Long> page = getIds(store.findBefore(CHANNEL_ID, Long.MAX_VALUE, 100));
+                    for (int i = 1; i < page.size(); i++)
+                        assertTrue(page.get(i) < page.get(i - 1));
+                    final long total = store.findByChannelId(CHANNEL_ID, PageRequest.of(0, 1)).getTotalElements();
+                    assertTrue(total >= seen);
+                    seen = (int) total;
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        final List<Long> ids = post(store, 5000, "x".repeat(300));
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(ids.subList(4900, 5000).reversed(), getIds(store.findBefore(CHANNEL_ID, Long.MAX_VALUE, 100)));
+    }
+
+    private Path getNewestSegment() throws IOException {
+        try (Stream<Path> segments = Files.list(directory.resolve(String.valueOf(CHANNEL_ID)))) {
+            return segments.sorted().toList().getLast();
+        }
+    }
+
+    private static List<Integer> findRecordOffsets(final Path segment) throws IOException {
+        final List<Integer> offsets = new ArrayList<>();
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+            int position = 0;
+            while (position + HEADER_BYTES <= file.size()) {
+                final int length = readInt(file, position);
+                if (length == 0)
+                    break;
+                offsets.add(position);
+                position += HEADER_BYTES + length;
+            }
+        }
+        return offsets;
+    }
+
+    private static int readInt(final FileChannel file, final int position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4);
+        file.read(buffer, position);
+        return buffer.getInt(0);
+    }
+}
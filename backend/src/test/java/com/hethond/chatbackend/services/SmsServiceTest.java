@@ -0,0 +1,53 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.exceptions.SmsRejectedException;
+import com.hethond.chatbackend.exceptions.SmsSubmissionException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class SmsServiceTest {
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final SmsSender smsSender = mock(SmsSender.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SmsService smsService = new SmsService(smsSender, 10, 1, 1000, MAX_ATTEMPTS, 10, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        smsService.destroy();
+    }
+
+    @Test
+    void retriesAFailedSubmission() {
+        doThrow(new SmsSubmissionException("Throttled")).when(smsSender).send(anyString(), anyString(), anyString());
+
+        smsService.sendMessage("author", "+15550000001", "code");
+
+        verify(smsSender, timeout(5000).times(MAX_ATTEMPTS)).send("author", "+15550000001", "code");
+        assertEquals(0, meterRegistry.counter("chat.sms.rejected").count());
+    }
+
+    @Test
+    void givesUpAtOnceOnARejection() throws InterruptedException {
+        doThrow(new SmsRejectedException("Invalid number")).when(smsSender).send(anyString(), anyString(), anyString());
+
+        smsService.sendMessage("author", "+15550000002", "code");
+
+        verify(smsSender, timeout(5000)).send("author", "+15550000002", "code");
+        // Longer than every backoff a retry would have waited.
+        TimeUnit.MILLISECONDS.sleep(200);
+        verify(smsSender, times(1)).send(anyString(), anyString(), anyString());
+        assertEquals(1, meterRegistry.counter("chat.sms.rejected").count());
+    }
+}
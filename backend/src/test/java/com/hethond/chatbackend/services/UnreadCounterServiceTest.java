@@ -0,0 +1,126 @@
+package com.hethond.chatbackend.services;
+
+import com.hethond.chatbackend.entities.dto.ChannelReadState;
+import com.hethond.chatbackend.exceptions.ApiException;
+import com.hethond.chatbackend.services.UnreadCounterService.Increment;
+import com.hethond.chatbackend.services.UnreadCounterService.MarkRead;
+import com.hethond.chatbackend.services.UnreadCounterService.Update;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// How a batch of updates is coalesced into Redis commands, and a read marker that is never written.
+class UnreadCounterServiceTest {
+    private static final long CHANNEL_ID = 7;
+    private static final byte[] FIELD = String.valueOf(CHANNEL_ID).getBytes(StandardCharsets.UTF_8);
+
+    private final UUID author = UUID.randomUUID();
+    private final UUID reader = UUID.randomUUID();
+    private final ChannelMembershipIndex.MemberIdSet members = ChannelMembershipIndex.MemberIdSet.of(List.of(author, reader));
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final RedisHashCommands hashCommands = mock(RedisHashCommands.class);
+    private UnreadCounterService service;
+
+    private UnreadCounterService openService(final boolean enabled) {
+        final RedisConnection connection = mock(RedisConnection.class);
+        when(connection.hashCommands()).thenReturn(hashCommands);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            return List.of();
+        });
+        service = new UnreadCounterService(redisTemplate, enabled, 100, 1, 100, new SimpleMeterRegistry());
+        return service;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (service != null)
+            service.destroy();
+    }
+
+    private Increment increment() {
+        return new Increment(CHANNEL_ID, author, members);
+    }
+
+    private MarkRead markRead(final long messageId) {
+        return new MarkRead(CHANNEL_ID, reader, messageId, new CompletableFuture<>());
+    }
+
+    private static byte[] getKey(final String prefix, final UUID userId) {
+        return (prefix + userId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getBytes(final long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void resetDropsTheIncrementsBeforeIt() {
+        final MarkRead markRead = markRead(100);
+        openService(false).writeBatch(List.<Update>of(increment(), increment(), markRead));
+
+        verify(hashCommands).hSet(getKey("chat:read:", reader), FIELD, getBytes(100));
+        verify(hashCommands).hDel(getKey("chat:unread:", reader), FIELD);
+        verify(hashCommands, never()).hIncrBy(any(byte[].class), any(byte[].class), anyLong());
+        assertEquals(new ChannelReadState(0, 100L), markRead.result().join());
+    }
+
+    @Test
+    void keepsTheIncrementsAfterAReset() {
+        final MarkRead markRead = markRead(100);
+        openService(false).writeBatch(List.<Update>of(increment(), markRead, increment(), increment()));
+
+        final InOrder order = inOrder(hashCommands);
+        order.verify(hashCommands).hDel(getKey("chat:unread:", reader), FIELD);
+        order.verify(hashCommands).hIncrBy(getKey("chat:unread:", reader), FIELD, 2);
+        // The author's own messages are never unread.
+        verify(hashCommands, never()).hIncrBy(getKey("chat:unread:", author), FIELD, 1);
+        assertEquals(new ChannelReadState(2, 100L), markRead.result().join());
+    }
+
+    @Test
+    void completesEveryResetOfABatch() {
+        final MarkRead first = markRead(100);
+        final MarkRead second = markRead(200);
+        openService(false).writeBatch(List.<Update>of(first, increment(), second));
+
+        verify(hashCommands).hSet(getKey("chat:read:", reader), FIELD, getBytes(200));
+        verify(hashCommands, never()).hSet(getKey("chat:read:", reader), FIELD, getBytes(100));
+        verify(hashCommands, never()).hIncrBy(any(byte[].class), any(byte[].class), anyLong());
+        assertEquals(new ChannelReadState(0, 100L), first.result().join());
+        assertEquals(new ChannelReadState(0, 200L), second.result().join());
+    }
+
+    @Test
+    void answersServiceUnavailableWhenTheResetIsNotWritten() {
+        final UnreadCounterService service = openService(true);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            Thread.sleep(1000);
+            return List.of();
+        });
+
+        final ApiException e = assertThrows(ApiException.class, () -> service.markRead(CHANNEL_ID, reader));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), e.getCode());
+    }
+}